@@ -0,0 +1,213 @@
+package interpreter;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import interpreter.util.Context;
+import interpreter.util.OutputBuffer;
+import lexical.LexicalException;
+
+// mdi --daemon: uma JVM ja aquecida que executa scripts pedidos pelo mdc
+// por um socket Unix, com os programas compilados num cache.
+//
+// Protocolo: o cliente manda o seu diretorio (writeUTF), se esta num
+// terminal (writeBoolean), o numero de argumentos (writeInt) e os
+// argumentos do mdi (writeUTF); o resto do que ele manda e a entrada do
+// script. O servidor responde com quadros: um byte de tipo, o tamanho
+// (int) e os dados. OUTPUT vai para a saida padrao, ERROR para a saida de
+// erro e EXIT, com o codigo de saida (int), termina o pedido.
+//
+// Cada pedido roda numa thread do servidor, com seu contexto e suas
+// variaveis; um script que aborta so encerra o proprio pedido. Ha no maximo
+// THREADS pedidos rodando; os que chegam depois esperam numa fila.
+public class Daemon {
+
+    public static final byte OUTPUT = 'O';
+    public static final byte ERROR = 'E';
+    public static final byte EXIT = 'X';
+
+    private static final int CACHE_SIZE = 256;
+    private static final int THREADS = 16;
+
+    private final Path socket;
+    private final ProgramCache cache;
+
+    public Daemon(Path socket) {
+        this.socket = socket;
+        this.cache = new ProgramCache(new MiniDartEngine(), CACHE_SIZE);
+    }
+
+    // Socket usado quando nenhum e dado: $MDI_SOCKET, ou um por usuario no
+    // diretorio temporario.
+    public static Path defaultSocket() {
+        String s = System.getenv("MDI_SOCKET");
+        if (s != null && !s.isEmpty())
+            return Paths.get(s);
+
+        return Paths.get(System.getProperty("java.io.tmpdir"), "mdi-" + System.getProperty("user.name") + ".sock");
+    }
+
+    // Atende pedidos ate a JVM terminar. Um socket velho (de um servidor
+    // que nao esta mais rodando) e removido; um que ainda atende nao.
+    public void serve() throws IOException {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(this.socket);
+        if (Files.exists(this.socket)) {
+            if (listening(address))
+                throw new IOException("mdi daemon already running on " + this.socket);
+
+            Files.delete(this.socket);
+        }
+
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(address);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(this.socket);
+            } catch (IOException e) {
+                // Nada a fazer; o proximo servidor remove o socket.
+            }
+        }));
+
+        ExecutorService requests = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "mdi-request");
+            t.setDaemon(true);
+            return t;
+        });
+
+        while (true) {
+            SocketChannel client = server.accept();
+            requests.execute(() -> handle(client));
+        }
+    }
+
+    private static boolean listening(UnixDomainSocketAddress address) {
+        try {
+            SocketChannel.open(address).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (SocketChannel c = client) {
+            Frames frames = new Frames(c);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(c)));
+
+            int status;
+            try {
+                status = run(in, frames);
+            } catch (RuntimeException | StackOverflowError e) {
+                // Erros que o mdi mostraria com o stack trace.
+                frames.send(ERROR, ByteBuffer.wrap((e + "\n").getBytes(Charset.defaultCharset())));
+                status = 1;
+            }
+
+            frames.send(EXIT, ByteBuffer.allocate(4).putInt(0, status));
+        } catch (IOException e) {
+            // O cliente foi embora.
+        }
+    }
+
+    // Executa um pedido como o mdi executaria e devolve o codigo de saida.
+    private int run(DataInputStream in, Frames frames) throws IOException {
+        Path dir = Paths.get(in.readUTF());
+        boolean console = in.readBoolean();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++)
+            args[i] = in.readUTF();
+
+        OutputStream stdout = Channels.newOutputStream(frames);
+
+        // --offheap-threshold vale para toda a JVM, entao so conta na linha
+        // de comando do servidor; num pedido ele e ignorado.
+        Options o = Options.parse(args);
+        if (o == null || o.daemon() != null) {
+            stdout.write((Options.USAGE + "\n").getBytes(Charset.defaultCharset()));
+            return 0;
+        }
+
+        Context context = o.context(in, stdout, console);
+        context.setDirectory(dir);
+
+        FileChannel file = o.out() == null ? null :
+            FileChannel.open(dir.resolve(o.out()), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputBuffer output = new OutputBuffer(file == null ? frames : file, o.async());
+        context.setOutput(output);
+
+        try {
+            Program p = this.cache.get(dir.resolve(o.file()));
+            p.run(context);
+            return 0;
+        } catch (MiniDartException e) {
+            String msg = String.format("%02d: %s\n", e.getLine(), e.getMessage());
+            stdout.write(msg.getBytes(Charset.defaultCharset()));
+            return 1;
+        } catch (LexicalException e) {
+            // Arquivo que nao existe ou nao pode ser lido.
+            String msg = String.format("%s: %s\n", e.getMessage(), o.file());
+            stdout.write(msg.getBytes(Charset.defaultCharset()));
+            return 1;
+        } finally {
+            output.close();
+            if (file != null)
+                file.close();
+        }
+    }
+
+    // Saida de um pedido, em quadros OUTPUT.
+    private static class Frames implements WritableByteChannel {
+
+        private final SocketChannel channel;
+
+        Frames(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            send(OUTPUT, src);
+            return n;
+        }
+
+        synchronized void send(byte type, ByteBuffer data) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(5);
+            header.put(type).putInt(data.remaining()).flip();
+
+            ByteBuffer[] frame = { header, data };
+            while (header.hasRemaining() || data.hasRemaining())
+                this.channel.write(frame);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.channel.isOpen();
+        }
+
+        // O socket e fechado por quem atende o pedido.
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import interpreter.command.Command;
+import lexical.LexicalAnalysis;
+import syntatic.SyntaticAnalysis;
+
+// Interpretador para ser usado de dentro de outro programa: compila uma
+// vez e executa o Program quantas vezes precisar, sem encerrar a JVM.
+// Erros de sintaxe e de execucao viram MiniDartException.
+public class MiniDartEngine {
+
+    public Program compile(String source) {
+        return compile(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Os bytes de um arquivo, lidos como se viessem dele.
+    Program compile(byte[] source) {
+        try (LexicalAnalysis l = new LexicalAnalysis(new ByteArrayInputStream(source))) {
+            return compile(l);
+        }
+    }
+
+    public Program compile(Path file) {
+        try (LexicalAnalysis l = new LexicalAnalysis(file.toString())) {
+            return compile(l);
+        }
+    }
+
+    private Program compile(LexicalAnalysis l) {
+        SyntaticAnalysis s = new SyntaticAnalysis(l);
+        Command c = s.start();
+        return new Program(c);
+    }
+
+}
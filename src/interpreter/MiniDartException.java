@@ -0,0 +1,25 @@
+package interpreter;
+
+// Erro que interrompe a analise ou a execucao de um programa, com a linha
+// em que aconteceu. E o que antes encerrava o processo com System.exit.
+public class MiniDartException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+
+    public MiniDartException(int line, String msg) {
+        super(msg);
+        this.line = line;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%02d: %s", line, getMessage());
+    }
+
+}
@@ -0,0 +1,101 @@
+package interpreter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import interpreter.util.Context;
+
+// Opcoes da linha de comando do mdi. Sao as mesmas numa execucao normal e
+// num pedido feito ao mdi --daemon.
+public class Options {
+
+    public static final String USAGE = "Usage: java mdi [--offheap-threshold=N] [--seed=N] " +
+        "[--prompt=always|auto|never] [--out=file] [--async-output] [--daemon[=socket]] [miniDart file]";
+
+    private String file;
+    private Long seed;
+    private String prompt;
+    private String out;
+    private boolean async;
+    private int offHeapThreshold;
+    private String daemon;
+
+    private Options() {
+        this.file = null;
+        this.seed = null;
+        this.prompt = "always";
+        this.out = null;
+        this.async = false;
+        this.offHeapThreshold = -1;
+        this.daemon = null;
+    }
+
+    // As opcoes de args, ou null se elas nao formam uma chamada valida
+    // (nenhum arquivo, ou mais de um).
+    public static Options parse(String[] args) {
+        Options o = new Options();
+        for (String arg : args) {
+            if (arg.startsWith("--offheap-threshold=")) {
+                o.offHeapThreshold = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--prompt=")) {
+                o.prompt = value(arg);
+            } else if (arg.startsWith("--out=")) {
+                o.out = value(arg);
+            } else if (arg.equals("--async-output")) {
+                o.async = true;
+            } else if (arg.startsWith("--seed=")) {
+                o.seed = Long.parseLong(value(arg));
+            } else if (arg.equals("--daemon")) {
+                o.daemon = "";
+            } else if (arg.startsWith("--daemon=")) {
+                o.daemon = value(arg);
+            } else if (o.file == null) {
+                o.file = arg;
+            } else {
+                return null;
+            }
+        }
+
+        if (o.file == null && o.daemon == null)
+            return null;
+
+        return o;
+    }
+
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    public String file() {
+        return this.file;
+    }
+
+    public String out() {
+        return this.out;
+    }
+
+    public boolean async() {
+        return this.async;
+    }
+
+    // Limite de --offheap-threshold, ou -1 se a opcao nao foi dada.
+    public int offHeapThreshold() {
+        return this.offHeapThreshold;
+    }
+
+    // Socket de --daemon ("" para o padrao), ou null se a opcao nao foi dada.
+    public String daemon() {
+        return this.daemon;
+    }
+
+    // Contexto com a semente e os prompts pedidos. console diz se quem
+    // executa esta num terminal (para --prompt=auto).
+    public Context context(InputStream in, OutputStream out, boolean console) {
+        Context c = this.seed == null ? new Context(in, out) : new Context(this.seed, in, out);
+        if (this.prompt.equals("never") || (this.prompt.equals("auto") && !console))
+            c.setPrompts(false);
+
+        return c;
+    }
+
+}
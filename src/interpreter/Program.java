@@ -0,0 +1,47 @@
+package interpreter;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import interpreter.command.Command;
+import interpreter.expr.Effects;
+import interpreter.expr.Variable;
+import interpreter.util.Context;
+
+// Programa compilado por MiniDartEngine. Cada execucao trabalha numa copia
+// da arvore com variaveis proprias, entao o mesmo programa pode ser
+// executado varias vezes, inclusive ao mesmo tempo em threads diferentes.
+public class Program {
+
+    private final Command root;
+    private final Set<Variable> vars;
+
+    Program(Command root) {
+        this.root = root;
+
+        Effects e = new Effects();
+        root.analyze(e);
+        this.vars = new HashSet<Variable>(e.reads());
+        this.vars.addAll(e.writes());
+    }
+
+    // Executa com a entrada, a saida e o gerador de context. A saida e
+    // esvaziada no final, mesmo se a execucao abortar.
+    public void run(Context context) {
+        Map<Variable, Variable> copies = new HashMap<Variable, Variable>();
+        for (Variable v : this.vars)
+            copies.put(v, v.copy());
+
+        Command c = this.root.rebind(copies);
+        Context old = Context.set(context);
+        try {
+            c.execute();
+        } finally {
+            context.output().flush();
+            Context.set(old);
+        }
+    }
+
+}
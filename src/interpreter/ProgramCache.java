@@ -0,0 +1,88 @@
+package interpreter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lexical.LexicalException;
+
+// Programas ja compilados pelo mdi --daemon, por arquivo. Enquanto a data
+// de modificacao e o tamanho do arquivo nao mudam, o programa guardado e
+// usado sem ler o arquivo; se mudam, o arquivo e lido e so e compilado de
+// novo se o hash do conteudo tambem mudou. Os menos usados saem quando o
+// cache enche.
+class ProgramCache {
+
+    private static class Entry {
+        final FileTime modified;
+        final long size;
+        final byte[] hash;
+        final Program program;
+
+        Entry(FileTime modified, long size, byte[] hash, Program program) {
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+            this.program = program;
+        }
+    }
+
+    private final MiniDartEngine engine;
+    private final Map<Path, Entry> entries;
+
+    ProgramCache(MiniDartEngine engine, int capacity) {
+        this.engine = engine;
+        this.entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // Erros de sintaxe nao ficam no cache: o arquivo e compilado de novo no
+    // proximo pedido.
+    Program get(Path file) {
+        file = file.toAbsolutePath().normalize();
+
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+
+            Entry e;
+            synchronized (this) {
+                e = this.entries.get(file);
+            }
+
+            if (e != null && e.modified.equals(attrs.lastModifiedTime()) && e.size == attrs.size())
+                return e.program;
+
+            byte[] source = Files.readAllBytes(file);
+            byte[] hash = hash(source);
+            Program p = e != null && Arrays.equals(e.hash, hash) ? e.program : this.engine.compile(source);
+
+            synchronized (this) {
+                this.entries.put(file, new Entry(attrs.lastModifiedTime(), source.length, hash, p));
+            }
+
+            return p;
+        } catch (IOException e) {
+            throw new LexicalException("Unable to open file");
+        }
+    }
+
+    private static byte[] hash(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
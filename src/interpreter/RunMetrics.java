@@ -0,0 +1,54 @@
+package interpreter;
+
+// Medidas de uma execucao feita pelo Runner.
+public class RunMetrics {
+
+    private final long waitNanos;
+    private final long wallNanos;
+    private final long allocatedBytes;
+    private final long outputBytes;
+    private final MiniDartException error;
+
+    RunMetrics(long waitNanos, long wallNanos, long allocatedBytes, long outputBytes,
+            MiniDartException error) {
+        this.waitNanos = waitNanos;
+        this.wallNanos = wallNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.outputBytes = outputBytes;
+        this.error = error;
+    }
+
+    // Tempo esperando uma vaga no limite de execucoes simultaneas.
+    public long waitNanos() {
+        return this.waitNanos;
+    }
+
+    // Tempo da execucao em si, da primeira instrucao ao flush da saida.
+    public long wallNanos() {
+        return this.wallNanos;
+    }
+
+    // Memoria alocada pela thread da execucao (valores, listas, textos...),
+    // ou -1 se a JVM nao mede isso para a thread. Tarefas paralelas de
+    // for nao entram na conta.
+    public long allocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    public long outputBytes() {
+        return this.outputBytes;
+    }
+
+    // O erro que abortou a execucao, ou null se ela terminou normalmente.
+    public MiniDartException error() {
+        return this.error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("wait=%.3fms wall=%.3fms allocated=%d output=%d%s",
+            this.waitNanos / 1e6, this.wallNanos / 1e6, this.allocatedBytes, this.outputBytes,
+            this.error == null ? "" : " error=[" + this.error + "]");
+    }
+
+}
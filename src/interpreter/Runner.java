@@ -0,0 +1,98 @@
+package interpreter;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import interpreter.util.Context;
+
+// Executa muitos Programs ao mesmo tempo, cada um com o seu Context (entrada,
+// saida e gerador) e as suas variaveis, no maximo limit de cada vez.
+//
+// Cada execucao ganha uma thread virtual quando a JVM tem (21 em diante);
+// as que passam do limite ficam paradas, sem ocupar uma thread do sistema.
+// Em JVMs sem threads virtuais as execucoes usam limit threads comuns.
+public class Runner implements AutoCloseable {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final ExecutorService executor;
+    private final Semaphore slots;
+
+    public Runner(int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("limit must be positive");
+
+        ExecutorService virtual = virtualThreads();
+        this.executor = virtual != null ? virtual : Executors.newFixedThreadPool(limit, r -> {
+            Thread t = new Thread(r, "mdi-runner");
+            t.setDaemon(true);
+            return t;
+        });
+        this.slots = new Semaphore(limit);
+    }
+
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            com.sun.management.ThreadMXBean t =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            return t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled() ? t : null;
+        } catch (ClassCastException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static long allocated() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    // Executa program com context. Um abort nao e uma falha: ele aparece em
+    // RunMetrics.error(). Outras excecoes completam o futuro com erro.
+    public CompletableFuture<RunMetrics> submit(Program program, Context context) {
+        long queued = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            this.slots.acquireUninterruptibly();
+            try {
+                long start = System.nanoTime();
+                long before = allocated();
+                MiniDartException error = null;
+                try {
+                    program.run(context);
+                } catch (MiniDartException e) {
+                    error = e;
+                }
+
+                long after = allocated();
+                long end = System.nanoTime();
+                return new RunMetrics(start - queued, end - start,
+                    before < 0 || after < 0 ? -1 : after - before, context.output().bytes(), error);
+            } finally {
+                this.slots.release();
+            }
+        }, this.executor);
+    }
+
+    // Espera as execucoes ja pedidas terminarem. Se a thread for
+    // interrompida, para de esperar e deixa o pedido de interrupcao marcado.
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -1,6 +1,14 @@
 package interpreter.command;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import interpreter.expr.Effects;
 import interpreter.expr.Expr;
+import interpreter.expr.Variable;
+import interpreter.util.Context;
+import interpreter.util.OutputBuffer;
 import interpreter.util.Utils;
 import interpreter.value.BoolValue;
 import interpreter.value.Value;
@@ -25,13 +33,32 @@ public class AssertCommand extends Command{
         boolean b = bv.value();
 
         if(!b){
-            if(msg != null){
-                Value<?> mensagem = msg.expr();
-                System.out.println(mensagem);
+            OutputBuffer out = Context.current().output();
+            try {
+                if(msg != null){
+                    Value<?> mensagem = msg.expr();
+                    Value.write(mensagem, out);
+                }
+                else 
+                    out.write("ExceptionLeroy: Assert Invalid");
+                out.write(System.lineSeparator());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            else 
-                System.out.println("ExceptionLeroy: Assert Invalid");
         }
     }
+
+    @Override
+    public void analyze(Effects e) {
+        expr.analyze(e);
+        if (msg != null)
+            msg.analyze(e);
+        e.io();
+    }
+
+    @Override
+    public Command rebind(Map<Variable, Variable> vars) {
+        return new AssertCommand(super.getLine(), expr.rebind(vars), msg != null ? msg.rebind(vars) : null);
+    }
     
 }
@@ -1,5 +1,8 @@
 package interpreter.command;
 
+import java.util.Map;
+
+import interpreter.expr.Effects;
 import interpreter.expr.Expr;
 import interpreter.expr.SetExpr;
 import interpreter.expr.UnaryExpr;
@@ -18,6 +21,15 @@ public class AssignCommand extends Command {
         this.lhs = lhs;
     }
 
+    Expr rhs() {
+        return rhs;
+    }
+
+    // null quando o comando e so uma expressao, como x++.
+    SetExpr lhs() {
+        return lhs;
+    }
+
     @Override
     public void execute() {
         Value<?> v = rhs.expr();
@@ -26,4 +38,16 @@ public class AssignCommand extends Command {
             lhs.setValue(v);
     }
 
+    @Override
+    public void analyze(Effects e) {
+        rhs.analyze(e);
+        if (lhs != null)
+            lhs.analyzeWrite(e);
+    }
+
+    @Override
+    public Command rebind(Map<Variable, Variable> vars) {
+        return new AssignCommand(super.getLine(), rhs.rebind(vars), lhs != null ? lhs.rebind(vars) : null);
+    }
+
 }
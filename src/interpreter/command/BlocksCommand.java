@@ -1,20 +1,62 @@
 package interpreter.command;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+
+import interpreter.expr.Effects;
+import interpreter.expr.Variable;
 
 public class BlocksCommand extends Command {
 
-    private List<Command> cmds;
+    private Command[] cmds;
 
+    // Blocos aninhados (declaracoes, { ... }) sao achatados neste, entao
+    // um bloco nunca contem outro, e declaracoes vazias somem.
     public BlocksCommand(int line, List<Command> cmds) {
         super(line);
-        this.cmds = cmds;
+
+        List<Command> flat = new ArrayList<Command>(cmds.size());
+        for (Command c : cmds) {
+            if (c instanceof BlocksCommand)
+                flat.addAll(Arrays.asList(((BlocksCommand) c).cmds));
+            else
+                flat.add(c);
+        }
+
+        this.cmds = flat.toArray(new Command[flat.size()]);
+    }
+
+    // O bloco com cmds, ou o proprio comando se sobrar so um.
+    public static Command of(int line, List<Command> cmds) {
+        BlocksCommand b = new BlocksCommand(line, cmds);
+        return b.cmds.length == 1 ? b.cmds[0] : b;
+    }
+
+    List<Command> commands() {
+        return Arrays.asList(cmds);
     }
 
     @Override
     public void execute() {
+        for (int i = 0; i < cmds.length; i++)
+            cmds[i].execute();
+    }
+
+    @Override
+    public void analyze(Effects e) {
         for (Command c : cmds)
-            c.execute();
+            c.analyze(e);
+    }
+
+    @Override
+    public Command rebind(Map<Variable, Variable> vars) {
+        List<Command> l = new ArrayList<Command>(cmds.length);
+        for (Command c : cmds)
+            l.add(c.rebind(vars));
+
+        return new BlocksCommand(super.getLine(), l);
     }
     
 }
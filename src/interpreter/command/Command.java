@@ -1,5 +1,10 @@
 package interpreter.command;
 
+import java.util.Map;
+
+import interpreter.expr.Effects;
+import interpreter.expr.Variable;
+
 public abstract class Command {
 
     private int line;
@@ -14,4 +19,10 @@ public abstract class Command {
 
     public abstract void execute();
 
+    // Registra em e as variaveis lidas e escritas e os efeitos do comando.
+    public abstract void analyze(Effects e);
+
+    // Copia do comando com as variaveis de vars trocadas (veja Expr.rebind()).
+    public abstract Command rebind(Map<Variable, Variable> vars);
+
 }
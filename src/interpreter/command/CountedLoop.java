@@ -0,0 +1,213 @@
+package interpreter.command;
+
+import java.util.Collections;
+import java.util.List;
+
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.BinaryOp;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.Effects;
+import interpreter.expr.Expr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.UnaryOp;
+import interpreter.expr.Variable;
+import interpreter.value.NumberValue;
+import interpreter.value.Value;
+
+// Laco while (ou a parte while de um do-while) que conta com uma variavel:
+//
+//   while (i++ < n) ...        while (i < n) { ...; i++; }
+//   while (--i >= n) ...       while (i <= n) { ...; i = i + 2; }
+//
+// i so muda pelo passo no teste e/ou pelo ultimo comando do corpo, e n nao
+// muda dentro do laco. O contador fica num int; a variavel so e atualizada
+// antes do corpo, se o corpo le i, e ao sair do laco.
+class CountedLoop {
+
+    private final Variable counter;
+    private final Expr bound;
+    private final BinaryOp op;
+    private final boolean pre;
+    private final int testStep;
+    private final int bodyStep;
+    private final Command body;
+    private final boolean readsCounter;
+
+    private CountedLoop(Variable counter, Expr bound, BinaryOp op, boolean pre, int testStep,
+            int bodyStep, Command body, boolean readsCounter) {
+        this.counter = counter;
+        this.bound = bound;
+        this.op = op;
+        this.pre = pre;
+        this.testStep = testStep;
+        this.bodyStep = bodyStep;
+        this.body = body;
+        this.readsCounter = readsCounter;
+    }
+
+    // O laco contado para while (cond) body, ou null se ele nao tem a forma acima.
+    static CountedLoop of(Expr cond, Command body) {
+        if (!(cond instanceof BinaryExpr))
+            return null;
+
+        BinaryExpr test = (BinaryExpr) cond;
+        BinaryOp op = test.getOp();
+        if (op != BinaryOp.LOWER_THAN && op != BinaryOp.LOWER_EQUAL &&
+                op != BinaryOp.GREATER_THAN && op != BinaryOp.GREATER_EQUAL)
+            return null;
+
+        // Lado do contador: i, i++, ++i, i-- ou --i.
+        Expr left = test.getLeft();
+        int testStep = 0;
+        boolean pre = false;
+        if (left instanceof UnaryExpr) {
+            UnaryOp u = ((UnaryExpr) left).getOp();
+            testStep = step(u);
+            if (testStep == 0)
+                return null;
+
+            pre = u == UnaryOp.PRE_INC || u == UnaryOp.PRE_DEC;
+            left = ((UnaryExpr) left).getExpr();
+        }
+
+        if (!(left instanceof Variable) || ((Variable) left).isConstant())
+            return null;
+
+        Variable counter = (Variable) left;
+
+        // Passo no fim do corpo: i++, i = i + c e afins.
+        List<Command> cmds = body instanceof BlocksCommand ?
+            ((BlocksCommand) body).commands() : Collections.singletonList(body);
+        int bodyStep = 0;
+        Command rest = body;
+        if (!cmds.isEmpty()) {
+            bodyStep = bodyStep(counter, cmds.get(cmds.size() - 1));
+            if (bodyStep != 0)
+                rest = new BlocksCommand(body.getLine(), cmds.subList(0, cmds.size() - 1));
+        }
+
+        if (testStep == 0 && bodyStep == 0)
+            return null;
+
+        Effects e = new Effects();
+        rest.analyze(e);
+        if (e.writes().contains(counter))
+            return null;
+
+        // O limite precisa dar o mesmo valor em todas as iteracoes. Com
+        // alteracoes de listas e mapas no corpo (que mudariam length(m),
+        // por exemplo) so valem constantes e variaveis.
+        Effects b = new Effects();
+        Expr bound = test.getRight();
+        bound.analyze(b);
+        if (b.hasIO() || b.usesRandom() || !b.writes().isEmpty() || b.reads().contains(counter))
+            return null;
+
+        for (Variable v : b.reads()) {
+            if (e.writes().contains(v))
+                return null;
+        }
+
+        if (e.mutates() && !(bound instanceof ConstExpr) && !(bound instanceof Variable))
+            return null;
+
+        return new CountedLoop(counter, bound, op, pre, testStep, bodyStep, rest, e.reads().contains(counter));
+    }
+
+    private static int step(UnaryOp op) {
+        switch (op) {
+            case PRE_INC:
+            case POS_INC:
+                return 1;
+            case PRE_DEC:
+            case POS_DEC:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    // Quanto c soma ao contador, ou 0 se c nao e um passo.
+    private static int bodyStep(Variable counter, Command c) {
+        if (!(c instanceof AssignCommand))
+            return 0;
+
+        AssignCommand a = (AssignCommand) c;
+        if (a.lhs() == null) {
+            if (!(a.rhs() instanceof UnaryExpr) || ((UnaryExpr) a.rhs()).getExpr() != counter)
+                return 0;
+
+            return step(((UnaryExpr) a.rhs()).getOp());
+        }
+
+        if (a.lhs() != counter || !(a.rhs() instanceof BinaryExpr))
+            return 0;
+
+        BinaryExpr b = (BinaryExpr) a.rhs();
+        if (b.getOp() == BinaryOp.ADD && b.getLeft() == counter)
+            return constant(b.getRight());
+        if (b.getOp() == BinaryOp.ADD && b.getRight() == counter)
+            return constant(b.getLeft());
+        if (b.getOp() == BinaryOp.SUB && b.getLeft() == counter)
+            return -constant(b.getRight());
+
+        return 0;
+    }
+
+    private static int constant(Expr e) {
+        if (!(e instanceof ConstExpr) || !(e.expr() instanceof NumberValue))
+            return 0;
+
+        return ((NumberValue) e.expr()).value();
+    }
+
+    // Executa o laco; false se o contador ou o limite nao sao numeros, e o
+    // laco deve ser executado do jeito normal (que vai abortar).
+    boolean run() {
+        if (!this.counter.initialized() || !(this.counter.expr() instanceof NumberValue))
+            return false;
+
+        Value<?> b = this.bound.expr();
+        if (!(b instanceof NumberValue))
+            return false;
+
+        int n = ((NumberValue) this.counter.expr()).value();
+        int limit = ((NumberValue) b).value();
+        while (true) {
+            int t;
+            if (this.pre) {
+                n += this.testStep;
+                t = n;
+            } else {
+                t = n;
+                n += this.testStep;
+            }
+
+            if (!test(t, limit))
+                break;
+
+            if (this.readsCounter)
+                this.counter.setValue(new NumberValue(n));
+
+            this.body.execute();
+            n += this.bodyStep;
+        }
+
+        this.counter.setValue(new NumberValue(n));
+        return true;
+    }
+
+    private boolean test(int t, int limit) {
+        switch (this.op) {
+            case LOWER_THAN:
+                return t < limit;
+            case LOWER_EQUAL:
+                return t <= limit;
+            case GREATER_THAN:
+                return t > limit;
+            default:
+                return t >= limit;
+        }
+    }
+
+}
@@ -1,6 +1,10 @@
 package interpreter.command;
 
+import java.util.Map;
+
+import interpreter.expr.Effects;
 import interpreter.expr.Expr;
+import interpreter.expr.Variable;
 import interpreter.util.Utils;
 import interpreter.value.BoolValue;
 import interpreter.value.Value;
@@ -8,6 +12,8 @@ import interpreter.value.Value;
 public class DoWhileCommand extends Command{
     private Command cmds;
     private Expr expr;
+    private CountedLoop counted;
+    private boolean checked;
 
     public DoWhileCommand(int line,  Command cmds, Expr expr) {
         super(line);
@@ -19,6 +25,15 @@ public class DoWhileCommand extends Command{
     public void execute() {
         cmds.execute();
 
+        // Depois da primeira execucao do corpo o resto e um while comum.
+        if (!checked) {
+            counted = CountedLoop.of(expr, cmds);
+            checked = true;
+        }
+
+        if (counted != null && counted.run())
+            return;
+
         while (true) {
             Value<?> v = expr.expr();
             if (!(v instanceof BoolValue))
@@ -33,4 +48,15 @@ public class DoWhileCommand extends Command{
             cmds.execute();
         }
     }
+
+    @Override
+    public void analyze(Effects e) {
+        expr.analyze(e);
+        cmds.analyze(e);
+    }
+
+    @Override
+    public Command rebind(Map<Variable, Variable> vars) {
+        return new DoWhileCommand(super.getLine(), cmds.rebind(vars), expr.rebind(vars));
+    }
 }
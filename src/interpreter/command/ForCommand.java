@@ -1,18 +1,25 @@
 package interpreter.command;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 
+import interpreter.expr.Effects;
 import interpreter.expr.Expr;
+import interpreter.expr.ListExpr;
 import interpreter.expr.Variable;
 import interpreter.util.Utils;
 import interpreter.value.ListValue;
+import interpreter.value.NumberValue;
+import interpreter.value.PackedList;
+import interpreter.value.RangeList;
 import interpreter.value.Value;
 
 public class ForCommand extends Command {
     private Variable var;
     private Expr expr;
     private Command cmds;
+    private Boolean fused;
+    private ParallelLoop parallel;
+    private boolean checked;
 
     public ForCommand(int line, Variable var, Expr expr, Command cmds) {
         super(line);
@@ -21,14 +28,78 @@ public class ForCommand extends Command {
         this.cmds = cmds;
     }
 
+    @Override
+    public void analyze(Effects e) {
+        e.bind(var);
+        expr.analyze(e);
+        cmds.analyze(e);
+    }
+
+    @Override
+    public Command rebind(Map<Variable, Variable> vars) {
+        return new ForCommand(super.getLine(), var.rebind(vars), expr.rebind(vars), cmds.rebind(vars));
+    }
+
     @Override
     public void execute() {
+        // for (x in [for ...]) percorre os elementos a medida que sao
+        // gerados, sem montar a lista, quando isso nao muda o resultado.
+        if (expr instanceof ListExpr) {
+            if (fused == null) {
+                Effects body = new Effects();
+                body.write(var);
+                cmds.analyze(body);
+                fused = ((ListExpr) expr).canStream(body);
+            }
+
+            if (fused) {
+                ((ListExpr) expr).emit(x -> {
+                    var.setValue(x);
+                    cmds.execute();
+                });
+                return;
+            }
+        }
+
         Value<?> v = expr.expr();
         if (!(v instanceof ListValue))
                 Utils.abort(super.getLine());
             
             ListValue lv = (ListValue) v;
 
+            // So listas com acesso por indice barato: em lines() ou keys()
+            // size() e get() leriam o arquivo ou copiariam o mapa inteiro.
+            if ((lv.value() instanceof PackedList || lv.value() instanceof RangeList) &&
+                    lv.value().size() >= ParallelLoop.THRESHOLD) {
+                if (!checked) {
+                    parallel = ParallelLoop.of(var, cmds);
+                    checked = true;
+                }
+
+                if (parallel != null && parallel.run(lv.value()))
+                    return;
+            }
+
+            if (lv.value() instanceof RangeList) {
+                // Contador primitivo, sem montar a lista.
+                RangeList r = (RangeList) lv.value();
+                int n = r.start();
+                for (int i = 0; i < r.size(); i++, n += r.step()) {
+                    var.setValue(new NumberValue(n));
+                    cmds.execute();
+                }
+                return;
+            }
+
+            if (lv.value() instanceof PackedList) {
+                PackedList pl = (PackedList) lv.value();
+                for (int i = 0; i < pl.size(); i++) {
+                    var.setValue(pl.get(i));
+                    cmds.execute();
+                }
+                return;
+            }
+
             for (Value<?> variable : lv.value()) {
                 var.setValue(variable);
                 cmds.execute();
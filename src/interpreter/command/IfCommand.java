@@ -1,6 +1,10 @@
 package interpreter.command;
 
+import java.util.Map;
+
+import interpreter.expr.Effects;
 import interpreter.expr.Expr;
+import interpreter.expr.Variable;
 import interpreter.util.Utils;
 import interpreter.value.BoolValue;
 import interpreter.value.Value;
@@ -17,6 +21,18 @@ public class IfCommand extends Command{
         this.elseCmds = elseCmds;
     }
 
+    Expr condition() {
+        return expr;
+    }
+
+    Command thenCommand() {
+        return thenCmds;
+    }
+
+    Command elseCommand() {
+        return elseCmds;
+    }
+
     @Override
     public void execute() {
         Value<?> v = expr.expr();
@@ -35,4 +51,18 @@ public class IfCommand extends Command{
             }
         }
     }
+
+    @Override
+    public void analyze(Effects e) {
+        expr.analyze(e);
+        thenCmds.analyze(e);
+        if (elseCmds != null)
+            elseCmds.analyze(e);
+    }
+
+    @Override
+    public Command rebind(Map<Variable, Variable> vars) {
+        return new IfCommand(super.getLine(), expr.rebind(vars), thenCmds.rebind(vars),
+            elseCmds != null ? elseCmds.rebind(vars) : null);
+    }
 }
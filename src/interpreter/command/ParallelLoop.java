@@ -0,0 +1,517 @@
+package interpreter.command;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import interpreter.expr.AccessExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.BinaryOp;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.Effects;
+import interpreter.expr.Expr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.UnaryOp;
+import interpreter.expr.Variable;
+import interpreter.util.Context;
+import interpreter.value.BoolValue;
+import interpreter.value.ListValue;
+import interpreter.value.MapValue;
+import interpreter.value.NumberValue;
+import interpreter.value.PackedMap;
+import interpreter.value.TextValue;
+import interpreter.value.Value;
+
+// Laco for cujas iteracoes so se comunicam por reducoes comutativas:
+//
+//   s = s + e;  s = e + s;  s = s - e;  s++;  s--
+//   m[k]++;  m[k]--;  m[k] = m[k] + e;  m[k] = m[k] - e
+//   m[k] = (m[k] ?? 0) + e;  if (m[k] == null) m[k] = 1; else m[k]++;
+//
+// com k uma variavel ou uma constante.
+//
+// O resto do corpo so pode ler variaveis de fora, atribuir a variavel do
+// for e variaveis que ele atribui antes de ler (temporarios), e sortear.
+// As variaveis de fora precisam guardar numeros, textos ou booleanos (ou a
+// propria lista percorrida): um mapa lido pelo corpo poderia ser o mesmo
+// de um acumulador com outro nome. Os mapas acumuladores precisam ter so
+// numeros como valores.
+//
+// O laco e dividido em pedacos executados em paralelo, cada um com
+// acumuladores locais que comecam em zero e sao somados aos originais no
+// final.
+class ParallelLoop {
+
+    static final int THRESHOLD = 10000;
+
+    // Numero fixo de pedacos: com sorteios, cada pedaco tem seu gerador, e
+    // o resultado para uma semente nao depende de quantas threads ha.
+    private static final int CHUNKS = 64;
+
+    private static final NumberValue ZERO = new NumberValue(0);
+
+    private final Variable var;
+    private final Command body;
+    private final Set<Variable> binds;
+    private final Set<Variable> reads;
+    private final Set<Variable> sums;
+    private final Set<Variable> counters;
+    private final boolean random;
+
+    private ParallelLoop(Variable var, Command body, Effects rest, Set<Variable> sums, Set<Variable> counters) {
+        this.var = var;
+        this.body = body;
+        this.binds = rest.binds();
+        this.reads = new HashSet<Variable>(rest.reads());
+        this.reads.removeAll(this.binds);
+        this.sums = sums;
+        this.counters = counters;
+        this.random = rest.usesRandom();
+    }
+
+    // O laco paralelo para este corpo, ou null se ele nao tem a forma acima.
+    static ParallelLoop of(Variable var, Command body) {
+        Analysis a = new Analysis();
+        a.rest.bind(var);
+
+        List<Command> top = body instanceof BlocksCommand ?
+            ((BlocksCommand) body).commands() : Collections.singletonList(body);
+        for (Command c : top) {
+            if (!a.temporary(c))
+                a.command(c);
+        }
+
+        if (a.sums.isEmpty() && a.counters.isEmpty())
+            return null;
+
+        if (!a.rest.isPureExceptRandom())
+            return null;
+
+        // Quem le ou escreve os acumuladores fora das reducoes veria
+        // valores parciais.
+        Set<Variable> targets = new HashSet<Variable>(a.sums);
+        targets.addAll(a.counters);
+        if (targets.size() != a.sums.size() + a.counters.size())
+            return null;
+
+        for (Variable t : targets) {
+            if (t.isConstant() && a.sums.contains(t))
+                return null;
+            if (a.rest.reads().contains(t) || a.rest.writes().contains(t))
+                return null;
+        }
+
+        // m[k]++ falha numa chave ausente e (m[k] ?? 0) + e a cria; um
+        // pedaco nao sabe se outro pedaco ja criou a chave.
+        for (Variable m : a.creating) {
+            if (a.requiring.contains(m))
+                return null;
+        }
+
+        return new ParallelLoop(var, body, a.rest, a.sums, a.counters);
+    }
+
+    // Executa o laco sobre values; false se os valores das variaveis nao
+    // sao os descritos acima, e o laco deve ser executado do jeito normal.
+    boolean run(List<Value<?>> values) {
+        if (ForkJoinTask.inForkJoinPool())
+            return false;
+
+        if (!this.random && ForkJoinPool.getCommonPoolParallelism() < 2)
+            return false;
+
+        if (!sound(values))
+            return false;
+
+        Context context = Context.current();
+        int n = values.size();
+        List<Chunk> chunks = new ArrayList<Chunk>(CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            chunks.add(new Chunk(values, (int) ((long) n * i / CHUNKS), (int) ((long) n * (i + 1) / CHUNKS),
+                this.random ? context.split() : context));
+        }
+
+        ForkJoinTask.invokeAll(chunks);
+
+        for (Variable s : this.sums) {
+            int total = ((NumberValue) s.expr()).value();
+            for (Chunk c : chunks)
+                total += ((NumberValue) c.vars.get(s).expr()).value();
+
+            s.setValue(new NumberValue(total));
+        }
+
+        // Os pedacos sao somados em ordem, entao as chaves novas entram no
+        // mapa na mesma ordem que no laco sequencial. As reducoes so
+        // produzem numeros (ou abortam), entao todo valor local e um numero.
+        for (Variable m : this.counters) {
+            Map<Value<?>, Value<?>> map = ((MapValue) m.expr()).value();
+            for (Chunk c : chunks) {
+                Deltas local = (Deltas) ((MapValue) c.vars.get(m).expr()).value();
+                for (Map.Entry<Value<?>, Value<?>> e : local.entrySet()) {
+                    Value<?> old = map.get(e.getKey());
+                    int d = ((NumberValue) e.getValue()).value();
+                    if (old == null)
+                        map.put(e.getKey(), e.getValue());
+                    else if (d != 0)
+                        map.put(e.getKey(), new NumberValue(((NumberValue) old).value() + d));
+                }
+            }
+        }
+
+        // Variavel do for e temporarios: os valores do ultimo pedaco que os
+        // atribuiu, como no laco sequencial.
+        for (Variable b : this.binds) {
+            for (int i = CHUNKS - 1; i >= 0; i--) {
+                Variable c = chunks.get(i).vars.get(b);
+                if (c.initialized()) {
+                    b.setValue(c.expr());
+                    break;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // Confere, antes de dividir o laco, os valores que a analise do corpo
+    // nao tem como saber.
+    private boolean sound(List<Value<?>> values) {
+        for (Variable s : this.sums) {
+            if (!(s.expr() instanceof NumberValue))
+                return false;
+        }
+
+        // Dois acumuladores que sao o mesmo mapa quebrariam a conta de
+        // quais chaves cada um cria.
+        Map<Map<Value<?>, Value<?>>, Variable> maps = new IdentityHashMap<Map<Value<?>, Value<?>>, Variable>();
+        for (Variable m : this.counters) {
+            if (!(m.expr() instanceof MapValue))
+                return false;
+
+            Map<Value<?>, Value<?>> map = ((MapValue) m.expr()).value();
+            if (maps.put(map, m) != null)
+                return false;
+
+            for (Value<?> v : map.values()) {
+                if (!(v instanceof NumberValue))
+                    return false;
+            }
+        }
+
+        for (Variable r : this.reads) {
+            if (!r.initialized())
+                continue;
+
+            Value<?> v = r.expr();
+            if (v instanceof ListValue && ((ListValue) v).value() == values)
+                continue;
+
+            if (v != null && !(v instanceof NumberValue) && !(v instanceof TextValue) && !(v instanceof BoolValue))
+                return false;
+        }
+
+        return true;
+    }
+
+    // Mapa local de um pedaco para o acumulador m. Comeca vazio e guarda so
+    // as chaves que o pedaco altera; as outras chaves de m valem 0, para que
+    // m[k]++ e o teste m[k] == null se comportem como no mapa original, e
+    // o que o pedaco somar fique separado do valor original. O mapa original
+    // so e lido enquanto os pedacos rodam.
+    private static class Deltas extends AbstractMap<Value<?>, Value<?>> {
+
+        private final Map<Value<?>, Value<?>> original;
+        private final PackedMap changed;
+
+        Deltas(Map<Value<?>, Value<?>> original) {
+            this.original = original;
+            this.changed = new PackedMap();
+        }
+
+        @Override
+        public Value<?> get(Object key) {
+            Value<?> v = this.changed.get(key);
+            if (v != null)
+                return v;
+
+            return this.original.get(key) != null ? ZERO : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Value<?> put(Value<?> key, Value<?> value) {
+            Value<?> old = this.changed.put(key, value);
+            if (old != null)
+                return old;
+
+            return this.original.get(key) != null ? ZERO : null;
+        }
+
+        // So as chaves alteradas pelo pedaco.
+        @Override
+        public Set<Map.Entry<Value<?>, Value<?>>> entrySet() {
+            return this.changed.entrySet();
+        }
+
+    }
+
+    private class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Value<?>> values;
+        private final int from;
+        private final int to;
+        private final Context context;
+        private final Map<Variable, Variable> vars;
+
+        Chunk(List<Value<?>> values, int from, int to, Context context) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.context = context;
+            this.vars = new HashMap<Variable, Variable>();
+
+            for (Variable b : binds)
+                this.vars.put(b, b.copy());
+
+            for (Variable s : sums) {
+                Variable c = s.copy();
+                c.setValue(ZERO);
+                this.vars.put(s, c);
+            }
+
+            for (Variable m : counters) {
+                Variable c = m.copy();
+                c.setValue(new MapValue(new Deltas(((MapValue) m.expr()).value())));
+                this.vars.put(m, c);
+            }
+        }
+
+        @Override
+        protected void compute() {
+            Context old = Context.set(this.context);
+            try {
+                Variable v = var.rebind(this.vars);
+                Command c = body.rebind(this.vars);
+                for (int i = this.from; i < this.to; i++) {
+                    v.setValue(this.values.get(i));
+                    c.execute();
+                }
+            } finally {
+                Context.set(old);
+            }
+        }
+
+    }
+
+    // Percorre o corpo separando as reducoes do resto.
+    private static class Analysis {
+
+        final Effects rest = new Effects();
+        final Set<Variable> sums = new HashSet<Variable>();
+        final Set<Variable> counters = new HashSet<Variable>();
+        final Set<Variable> creating = new HashSet<Variable>();
+        final Set<Variable> requiring = new HashSet<Variable>();
+
+        // x = e no nivel de cima, antes de qualquer leitura de x: x e um
+        // temporario da iteracao.
+        boolean temporary(Command c) {
+            if (!(c instanceof AssignCommand) || !(((AssignCommand) c).lhs() instanceof Variable))
+                return false;
+
+            Variable x = (Variable) ((AssignCommand) c).lhs();
+            if (this.rest.reads().contains(x) || this.sums.contains(x) || this.counters.contains(x))
+                return false;
+
+            Effects rhs = new Effects();
+            ((AssignCommand) c).rhs().analyze(rhs);
+            if (rhs.reads().contains(x))
+                return false;
+
+            ((AssignCommand) c).rhs().analyze(this.rest);
+            this.rest.bind(x);
+            return true;
+        }
+
+        void command(Command c) {
+            if (c instanceof BlocksCommand) {
+                for (Command cmd : ((BlocksCommand) c).commands())
+                    command(cmd);
+            } else if (c instanceof IfCommand) {
+                IfCommand i = (IfCommand) c;
+                if (!counterIf(i)) {
+                    i.condition().analyze(this.rest);
+                    command(i.thenCommand());
+                    if (i.elseCommand() != null)
+                        command(i.elseCommand());
+                }
+            } else if (!(c instanceof AssignCommand) || !reduction((AssignCommand) c)) {
+                c.analyze(this.rest);
+            }
+        }
+
+        private boolean reduction(AssignCommand c) {
+            SetExpr lhs = c.lhs();
+            Expr rhs = c.rhs();
+
+            // s++, m[k]++ e afins.
+            if (lhs == null) {
+                if (!(rhs instanceof UnaryExpr) || ((UnaryExpr) rhs).getOp() == UnaryOp.NEG ||
+                        ((UnaryExpr) rhs).getOp() == UnaryOp.NOT)
+                    return false;
+
+                return target(((UnaryExpr) rhs).getExpr(), false);
+            }
+
+            if (!(rhs instanceof BinaryExpr))
+                return false;
+
+            BinaryExpr b = (BinaryExpr) rhs;
+            Expr delta;
+            boolean creates = false;
+            if (same(lhs, b.getLeft())) {
+                delta = b.getRight();
+            } else if (b.getOp() == BinaryOp.ADD && same(lhs, b.getRight())) {
+                delta = b.getLeft();
+            } else if (lhs instanceof AccessExpr && orZero(lhs, b.getLeft())) {
+                delta = b.getRight();
+                creates = true;
+            } else if (b.getOp() == BinaryOp.ADD && lhs instanceof AccessExpr && orZero(lhs, b.getRight())) {
+                delta = b.getLeft();
+                creates = true;
+            } else {
+                return false;
+            }
+
+            if (b.getOp() != BinaryOp.ADD && b.getOp() != BinaryOp.SUB)
+                return false;
+
+            if (!target(lhs, creates))
+                return false;
+
+            delta.analyze(this.rest);
+            return true;
+        }
+
+        // if (m[k] == null) m[k] = 1; else m[k]++;
+        private boolean counterIf(IfCommand c) {
+            if (!(c.condition() instanceof BinaryExpr) || c.elseCommand() == null)
+                return false;
+
+            BinaryExpr cond = (BinaryExpr) c.condition();
+            if (cond.getOp() != BinaryOp.EQUAL || !isConst(cond.getRight(), null))
+                return false;
+
+            Command then = single(c.thenCommand());
+            Command other = single(c.elseCommand());
+            if (!(then instanceof AssignCommand) || !(other instanceof AssignCommand))
+                return false;
+
+            AssignCommand set = (AssignCommand) then;
+            AssignCommand inc = (AssignCommand) other;
+            if (!same(cond.getLeft(), set.lhs()) || !isConst(set.rhs(), new NumberValue(1)))
+                return false;
+
+            if (inc.lhs() != null || !(inc.rhs() instanceof UnaryExpr))
+                return false;
+
+            UnaryExpr u = (UnaryExpr) inc.rhs();
+            if (u.getOp() != UnaryOp.PRE_INC && u.getOp() != UnaryOp.POS_INC)
+                return false;
+
+            if (!same(set.lhs(), u.getExpr()))
+                return false;
+
+            return target(set.lhs(), true);
+        }
+
+        // Registra s ou m[k] como acumulador.
+        private boolean target(Expr e, boolean creates) {
+            if (e instanceof Variable) {
+                this.sums.add((Variable) e);
+                return true;
+            }
+
+            // O indice e avaliado de novo na leitura e na escrita: com
+            // m[random(6)]++ elas podem ser chaves diferentes, e isso nao e
+            // uma reducao. So variaveis e constantes, como em same().
+            if (e instanceof AccessExpr && ((AccessExpr) e).getBase() instanceof Variable) {
+                Expr index = ((AccessExpr) e).getIndex();
+                if (!(index instanceof Variable) && !(index instanceof ConstExpr))
+                    return false;
+
+                Variable m = (Variable) ((AccessExpr) e).getBase();
+                index.analyze(this.rest);
+                this.counters.add(m);
+                if (creates)
+                    this.creating.add(m);
+                else
+                    this.requiring.add(m);
+
+                return true;
+            }
+
+            return false;
+        }
+
+        private static Command single(Command c) {
+            while (c instanceof BlocksCommand && ((BlocksCommand) c).commands().size() == 1)
+                c = ((BlocksCommand) c).commands().get(0);
+
+            return c;
+        }
+
+        // (m[k] ?? 0)
+        private static boolean orZero(Expr target, Expr e) {
+            if (!(e instanceof BinaryExpr) || ((BinaryExpr) e).getOp() != BinaryOp.IF_NULL)
+                return false;
+
+            BinaryExpr b = (BinaryExpr) e;
+            return same(target, b.getLeft()) && isConst(b.getRight(), ZERO);
+        }
+
+        private static boolean isConst(Expr e, Value<?> v) {
+            return e instanceof ConstExpr && Objects.equals(e.expr(), v);
+        }
+
+        // Mesma variavel, ou mesmo elemento (m[k]) com k a mesma variavel ou
+        // a mesma constante.
+        private static boolean same(Expr a, Expr b) {
+            if (a instanceof Variable)
+                return a == b;
+
+            if (!(a instanceof AccessExpr) || !(b instanceof AccessExpr))
+                return false;
+
+            AccessExpr x = (AccessExpr) a;
+            AccessExpr y = (AccessExpr) b;
+            if (!(x.getBase() instanceof Variable) || x.getBase() != y.getBase())
+                return false;
+
+            if (x.getIndex() instanceof Variable)
+                return x.getIndex() == y.getIndex();
+
+            return x.getIndex() instanceof ConstExpr && y.getIndex() instanceof ConstExpr &&
+                x.getIndex().expr() != null && x.getIndex().expr().equals(y.getIndex().expr());
+        }
+
+    }
+
+}
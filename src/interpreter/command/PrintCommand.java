@@ -1,6 +1,14 @@
 package interpreter.command;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import interpreter.expr.Effects;
 import interpreter.expr.Expr;
+import interpreter.expr.Variable;
+import interpreter.util.Context;
+import interpreter.util.OutputBuffer;
 import interpreter.value.Value;
 
 public class PrintCommand extends Command {
@@ -14,10 +22,27 @@ public class PrintCommand extends Command {
 
     @Override
     public void execute() {
-        if (expr != null) {
-            Value<?> v = expr.expr();
-            System.out.print(v);
+        OutputBuffer out = Context.current().output();
+        try {
+            if (expr != null) {
+                Value<?> v = expr.expr();
+                Value.write(v, out);
+            }
+            out.write(System.lineSeparator());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        System.out.println();
+    }
+
+    @Override
+    public void analyze(Effects e) {
+        if (expr != null)
+            expr.analyze(e);
+        e.io();
+    }
+
+    @Override
+    public Command rebind(Map<Variable, Variable> vars) {
+        return new PrintCommand(super.getLine(), expr != null ? expr.rebind(vars) : null);
     }
 }
@@ -1,6 +1,10 @@
 package interpreter.command;
 
+import java.util.Map;
+
+import interpreter.expr.Effects;
 import interpreter.expr.Expr;
+import interpreter.expr.Variable;
 import interpreter.util.Utils;
 import interpreter.value.BoolValue;
 import interpreter.value.Value;
@@ -9,6 +13,8 @@ public class WhileCommand extends Command {
 
     private Expr expr;
     private Command cmds;
+    private CountedLoop counted;
+    private boolean checked;
 
     public WhileCommand(int line, Expr expr, Command cmds) {
         super(line);
@@ -18,6 +24,14 @@ public class WhileCommand extends Command {
 
     @Override
     public void execute() {
+        if (!checked) {
+            counted = CountedLoop.of(expr, cmds);
+            checked = true;
+        }
+
+        if (counted != null && counted.run())
+            return;
+
         while (true) {
             Value<?> v = expr.expr();
             if (!(v instanceof BoolValue))
@@ -32,5 +46,16 @@ public class WhileCommand extends Command {
             cmds.execute();
         }
     }
+
+    @Override
+    public void analyze(Effects e) {
+        expr.analyze(e);
+        cmds.analyze(e);
+    }
+
+    @Override
+    public Command rebind(Map<Variable, Variable> vars) {
+        return new WhileCommand(super.getLine(), expr.rebind(vars), cmds.rebind(vars));
+    }
     
 }
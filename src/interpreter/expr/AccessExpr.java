@@ -20,6 +20,14 @@ public class AccessExpr extends SetExpr {
         this.index = index;
     }
 
+    public SetExpr getBase() {
+        return base;
+    }
+
+    public Expr getIndex() {
+        return index;
+    }
+
     @Override
     public Value<?> expr() {
         Value<?> bvalue = base.expr();
@@ -56,19 +64,40 @@ public class AccessExpr extends SetExpr {
         return null;
     }
 
+    @Override
+    public void analyze(Effects e) {
+        base.analyze(e);
+        index.analyze(e);
+    }
+
+    @Override
+    public void analyzeWrite(Effects e) {
+        analyze(e);
+        e.mutate();
+    }
+
+    @Override
+    public AccessExpr rebind(Map<Variable, Variable> vars) {
+        return new AccessExpr(super.getLine(), base.rebind(vars), index.rebind(vars));
+    }
+
     @Override
     public void setValue(Value<?> value) {
         Value<?> bvalue = base.expr();
         if (bvalue instanceof ListValue) {
             ListValue lv = (ListValue) bvalue;
-            List<Value<?>> list = lv.value();
+            List<Value<?>> list = lv.mutableValue();
 
             Value<?> ivalue = index.expr();
 
-            if (ivalue == null)
+            if (!(ivalue instanceof NumberValue))
+                Utils.abort(super.getLine());
+
+            int i = ((NumberValue) ivalue).intValue();
+            if (i < 0 || i >= list.size())
                 Utils.abort(super.getLine());
 
-            list.add(ivalue);
+            list.set(i, value);
 
         } else if (bvalue instanceof MapValue) {
             MapValue mv = (MapValue) bvalue;
@@ -1,7 +1,5 @@
 package interpreter.expr;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -10,6 +8,8 @@ import interpreter.value.BoolValue;
 import interpreter.value.ListValue;
 import interpreter.value.MapValue;
 import interpreter.value.NumberValue;
+import interpreter.value.PackedList;
+import interpreter.value.PackedMap;
 import interpreter.value.TextValue;
 import interpreter.value.Value;
 
@@ -26,6 +26,18 @@ public class BinaryExpr extends Expr {
         this.right = right;
     }
 
+    public Expr getLeft() {
+        return left;
+    }
+
+    public BinaryOp getOp() {
+        return op;
+    }
+
+    public Expr getRight() {
+        return right;
+    }
+
     @Override
     public Value<?> expr() {
         Value<?> v1 = left.expr();
@@ -66,6 +78,17 @@ public class BinaryExpr extends Expr {
         }
     }
 
+    @Override
+    public void analyze(Effects e) {
+        left.analyze(e);
+        right.analyze(e);
+    }
+
+    @Override
+    public Expr rebind(Map<Variable, Variable> vars) {
+        return new BinaryExpr(super.getLine(), left.rebind(vars), op, right.rebind(vars));
+    }
+
     private Value<?> ifNullOp(Value<?> v1, Value<?> v2) {
         if(v1 == null){
             if(v2 instanceof BoolValue){
@@ -411,11 +434,7 @@ public class BinaryExpr extends Expr {
             TextValue nv1 = (TextValue) v1;
             TextValue nv2 = (TextValue) v2;
 
-            String n1 = nv1.value();
-            String n2 = nv2.value();
-            String res = n1 + n2;
-
-            TextValue nres = new TextValue(res);
+            TextValue nres = nv1.concat(nv2);
             return nres;
 
         } if (v1 instanceof ListValue && v2 instanceof ListValue) {
@@ -424,8 +443,13 @@ public class BinaryExpr extends Expr {
 
             List<Value<?>> n1 = nv1.value();
             List<Value<?>> n2 = nv2.value();
-            List<Value<?>> res = new ArrayList<Value<?>>();
-            res.addAll(n1);
+            List<Value<?>> res;
+            if (n1 instanceof PackedList) {
+                res = ((PackedList) n1).fork();
+            } else {
+                res = new PackedList(n1.size() + n2.size());
+                res.addAll(n1);
+            }
             res.addAll(n2);
 
             ListValue nres = new ListValue(res);
@@ -437,8 +461,13 @@ public class BinaryExpr extends Expr {
 
             Map<Value<?>, Value<?>> n1 = nv1.value();
             Map<Value<?>, Value<?>> n2 = nv2.value();
-            Map<Value<?>, Value<?>> res = new HashMap<Value<?>, Value<?>>();
-            res.putAll(n1);
+            Map<Value<?>, Value<?>> res;
+            if (n1 instanceof PackedMap) {
+                res = ((PackedMap) n1).fork();
+            } else {
+                res = new PackedMap(n1.size() + n2.size());
+                res.putAll(n1);
+            }
             res.putAll(n2);
 
             MapValue nres = new MapValue(res);
@@ -1,5 +1,7 @@
 package interpreter.expr;
 
+import java.util.Map;
+
 import interpreter.value.Value;
 
 public class ConstExpr extends Expr {
@@ -15,4 +17,13 @@ public class ConstExpr extends Expr {
     public Value<?> expr() {
         return value;
     }
+
+    @Override
+    public void analyze(Effects e) {
+    }
+
+    @Override
+    public Expr rebind(Map<Variable, Variable> vars) {
+        return this;
+    }
 }
@@ -0,0 +1,123 @@
+package interpreter.expr;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// O que um trecho do programa pode ler e alterar, coletado percorrendo a
+// arvore com analyze(). E uma aproximacao conservadora: tudo que pode
+// acontecer em alguma execucao entra aqui.
+public class Effects {
+
+    private Set<Variable> reads;
+    private Set<Variable> writes;
+    private Set<Variable> binds;
+    private boolean io;
+    private boolean random;
+    private boolean mutates;
+
+    public Effects() {
+        this.reads = new HashSet<Variable>();
+        this.writes = new HashSet<Variable>();
+        this.binds = new HashSet<Variable>();
+        this.io = false;
+        this.random = false;
+        this.mutates = false;
+    }
+
+    public void read(Variable v) {
+        this.reads.add(v);
+    }
+
+    public void write(Variable v) {
+        this.writes.add(v);
+    }
+
+    // Variavel de um for, que o proprio trecho atribui antes de ler.
+    public void bind(Variable v) {
+        this.binds.add(v);
+        this.writes.add(v);
+    }
+
+    // Entrada ou saida: efeitos cuja ordem importa.
+    public void io() {
+        this.io = true;
+    }
+
+    // Sorteio: a ordem tambem importa, mas cada thread pode ter seu gerador.
+    public void random() {
+        this.random = true;
+    }
+
+    // Alteracao de um elemento de lista ou mapa (x[i] = ...).
+    public void mutate() {
+        this.mutates = true;
+    }
+
+    public Set<Variable> reads() {
+        return this.reads;
+    }
+
+    public Set<Variable> writes() {
+        return this.writes;
+    }
+
+    public Set<Variable> binds() {
+        return this.binds;
+    }
+
+    public boolean hasIO() {
+        return this.io;
+    }
+
+    public boolean mutates() {
+        return this.mutates;
+    }
+
+    public boolean usesRandom() {
+        return this.random;
+    }
+
+    // Sem entrada, saida, sorteio nem alteracao de listas e mapas, e so
+    // atribui as proprias variaveis de for: pode ser executado em varias
+    // threads, cada uma com suas copias dessas variaveis.
+    public boolean isPure() {
+        return !this.random && isPureExceptRandom();
+    }
+
+    // Como isPure(), mas aceitando sorteios.
+    public boolean isPureExceptRandom() {
+        if (this.io || this.mutates || !this.binds.containsAll(this.writes))
+            return false;
+
+        for (Variable v : this.binds) {
+            if (v.isConstant())
+                return false;
+        }
+
+        return true;
+    }
+
+    // Se executar este trecho e other intercalados da o mesmo resultado que
+    // executar este trecho inteiro antes de other.
+    public boolean independentOf(Effects other) {
+        if (this.mutates || other.mutates)
+            return false;
+
+        if ((this.io || this.random) && (other.io || other.random))
+            return false;
+
+        return disjoint(this.writes, other.reads) &&
+            disjoint(this.writes, other.writes) &&
+            disjoint(other.writes, this.reads);
+    }
+
+    private static boolean disjoint(Set<Variable> a, Set<Variable> b) {
+        for (Variable v : a) {
+            if (b.contains(v))
+                return false;
+        }
+
+        return true;
+    }
+
+}
@@ -1,5 +1,7 @@
 package interpreter.expr;
 
+import java.util.Map;
+
 import interpreter.value.Value;
 
 public abstract class Expr {
@@ -16,4 +18,11 @@ public abstract class Expr {
 
     public abstract Value<?> expr();
 
+    // Registra em e as variaveis lidas e os efeitos desta expressao.
+    public abstract void analyze(Effects e);
+
+    // Copia desta expressao com as variaveis de vars trocadas pelas
+    // correspondentes, para que threads diferentes nao dividam variaveis.
+    public abstract Expr rebind(Map<Variable, Variable> vars);
+
 }
@@ -1,16 +1,31 @@
 package interpreter.expr;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
+import interpreter.util.Context;
 import interpreter.util.Utils;
 import interpreter.value.ListValue;
+import interpreter.value.NumberValue;
+import interpreter.value.PackedList;
+import interpreter.value.RangeList;
 import interpreter.value.Value;
 
 public class ForListItem extends ListItem{
+    // Abaixo disso dividir entre threads custa mais do que economiza.
+    private static final int PARALLEL_THRESHOLD = 10000;
+    private static final int MIN_CHUNK = 1000;
+
     private Variable var;
     private Expr expr;
     private ListItem item;
+    private Boolean fused;
+    private Effects effects;
 
     public ForListItem(int line, Variable var, Expr expr, ListItem item) {
         super(line);
@@ -20,21 +35,160 @@ public class ForListItem extends ListItem{
     }
 
     @Override
-    public List<Value<?>> items() {
-        List<Value<?>> l = new ArrayList<Value<?>>();
-        
+    public void analyze(Effects e) {
+        e.bind(var);
+        expr.analyze(e);
+        item.analyze(e);
+    }
+
+    @Override
+    public ListItem rebind(Map<Variable, Variable> vars) {
+        return new ForListItem(super.getLine(), var.rebind(vars), expr.rebind(vars), item.rebind(vars));
+    }
+
+    @Override
+    public void emit(ItemSink out) {
+        if (expr instanceof ListExpr) {
+            if (fused == null) {
+                Effects body = new Effects();
+                body.write(var);
+                item.analyze(body);
+                fused = ((ListExpr) expr).canStream(body);
+            }
+
+            if (fused) {
+                ((ListExpr) expr).emit(x -> {
+                    var.setValue(x);
+                    item.emit(out);
+                });
+                return;
+            }
+        }
+
         Value<?> v = expr.expr();
         if (!(v instanceof ListValue))
                 Utils.abort(super.getLine());
             
             ListValue lv = (ListValue) v;
 
+            // So listas com acesso por indice barato: em lines() ou keys()
+            // size() e get() leriam o arquivo ou copiariam o mapa inteiro.
+            if ((lv.value() instanceof PackedList || lv.value() instanceof RangeList) &&
+                    lv.value().size() >= PARALLEL_THRESHOLD && isPure()) {
+                parallel(lv.value(), out);
+                return;
+            }
+
+            if (lv.value() instanceof RangeList) {
+                // Contador primitivo, sem montar a lista.
+                RangeList r = (RangeList) lv.value();
+                int n = r.start();
+                for (int i = 0; i < r.size(); i++, n += r.step()) {
+                    var.setValue(new NumberValue(n));
+                    item.emit(out);
+                }
+                return;
+            }
+
+            if (lv.value() instanceof PackedList) {
+                PackedList pl = (PackedList) lv.value();
+                for (int i = 0; i < pl.size(); i++) {
+                    var.setValue(pl.get(i));
+                    item.emit(out);
+                }
+                return;
+            }
+
             for (Value<?> variable : lv.value()) {
                 var.setValue(variable);
-                l.addAll(item.items());
+                item.emit(out);
             }
-            
-        return l;
     }
-    
+
+    // Se o corpo so le variaveis de fora e atribui as proprias variaveis de
+    // for, e ha mais de uma thread disponivel.
+    private boolean isPure() {
+        if (ForkJoinPool.getCommonPoolParallelism() < 2 || ForkJoinTask.inForkJoinPool())
+            return false;
+
+        if (effects == null) {
+            Effects e = new Effects();
+            e.bind(var);
+            item.analyze(e);
+            effects = e;
+        }
+
+        return effects.isPure();
+    }
+
+    // Divide os elementos em pedacos avaliados em paralelo, cada um com
+    // copias das variaveis de for, e entrega os resultados na ordem.
+    private void parallel(List<Value<?>> values, ItemSink out) {
+        int n = values.size();
+        int chunks = Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, n / MIN_CHUNK);
+        List<Chunk> tasks = new ArrayList<Chunk>(chunks);
+        for (int i = 0; i < chunks; i++)
+            tasks.add(new Chunk(values, (int) ((long) n * i / chunks), (int) ((long) n * (i + 1) / chunks)));
+
+        ForkJoinTask.invokeAll(tasks);
+
+        for (Chunk c : tasks)
+            out.addAll(c.join());
+
+        // As variaveis ficam com os valores que teriam depois do laco
+        // sequencial: os do ultimo pedaco que as atribuiu.
+        for (Variable b : effects.binds()) {
+            for (int i = chunks - 1; i >= 0; i--) {
+                Variable c = tasks.get(i).vars.get(b);
+                if (c.initialized()) {
+                    b.setValue(c.expr());
+                    break;
+                }
+            }
+        }
+    }
+
+    private class Chunk extends RecursiveTask<PackedList> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Value<?>> values;
+        private final int from;
+        private final int to;
+        private final Map<Variable, Variable> vars;
+        private final Context context;
+
+        Chunk(List<Value<?>> values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.context = Context.current();
+            this.vars = new HashMap<Variable, Variable>();
+            for (Variable b : effects.binds())
+                this.vars.put(b, b.copy());
+        }
+
+        @Override
+        protected PackedList compute() {
+            // Para que um abort numa thread do pool esvazie a saida desta
+            // execucao.
+            Context old = Context.set(context);
+            try {
+                Variable v = var.rebind(vars);
+                ListItem i = item.rebind(vars);
+                PackedList l = new PackedList();
+                ItemSink sink = new ListExpr.Collector(l);
+                for (int k = from; k < to; k++) {
+                    v.setValue(values.get(k));
+                    i.emit(sink);
+                }
+
+                return l;
+            } finally {
+                Context.set(old);
+            }
+        }
+
+    }
+
 }
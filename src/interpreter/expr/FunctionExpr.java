@@ -1,17 +1,27 @@
 package interpreter.expr;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Scanner;
+import java.util.Objects;
 
+import interpreter.util.Context;
+import interpreter.util.DataLoader;
 import interpreter.util.Utils;
 import interpreter.value.BoolValue;
+import interpreter.value.FileLines;
 import interpreter.value.ListValue;
 import interpreter.value.MapValue;
 import interpreter.value.NumberValue;
+import interpreter.value.PackedList;
+import interpreter.value.PackedMap;
+import interpreter.value.RangeList;
 import interpreter.value.TextValue;
 import interpreter.value.Value;
 
@@ -19,19 +29,22 @@ public class FunctionExpr extends Expr {
 
     private FunctionOp op;
     private Expr expr;
+    private Expr[] args;
 
-    private static Scanner input = new Scanner(System.in);
-
-    public FunctionExpr(int line, FunctionOp op, Expr expr) {
+    // args sao os argumentos depois do primeiro (contains, indexOf, join,
+    // count, split e range).
+    public FunctionExpr(int line, FunctionOp op, Expr expr, Expr... args) {
         super(line);
 
         this.op = op;
         this.expr = expr;
+        this.args = args;
     }
 
     @Override
     public Value<?> expr() {
         Value<?> v = expr.expr();
+        Value<?> a = args.length > 0 ? args[0].expr() : null;
 
         switch (op) {
             case READ:
@@ -50,73 +63,131 @@ public class FunctionExpr extends Expr {
                 return toIntOp(v);
             case TOSTR:
                 return toStrOp(v);
+            case SORT:
+                return sortOp(v);
+            case SUM:
+                return sumOp(v);
+            case MIN:
+                return minMaxOp(v, -1);
+            case MAX:
+                return minMaxOp(v, 1);
+            case CONTAINS:
+                return containsOp(v, a);
+            case INDEX_OF:
+                return indexOfOp(v, a);
+            case REVERSE:
+                return reverseOp(v);
+            case JOIN:
+                return joinOp(v, a);
+            case COUNT:
+                return countOp(v, a);
+            case RANGE:
+                return rangeOp(v, a, args.length > 1 ? args[1].expr() : new NumberValue(1));
+            case LINES:
+                return linesOp(v);
+            case SPLIT:
+                return splitOp(v, a);
+            case LOADCSV:
+                return loadOp(v, true);
+            case LOADJSON:
+                return loadOp(v, false);
             default:
                 Utils.abort(super.getLine());
                 return null;
         }
     }
 
+    @Override
+    public void analyze(Effects e) {
+        expr.analyze(e);
+        for (Expr a : args)
+            a.analyze(e);
+
+        if (op == FunctionOp.READ)
+            e.io();
+        else if (op == FunctionOp.RANDOM)
+            e.random();
+    }
+
+    @Override
+    public Expr rebind(Map<Variable, Variable> vars) {
+        Expr[] a = new Expr[args.length];
+        for (int i = 0; i < args.length; i++)
+            a[i] = args[i].rebind(vars);
+
+        return new FunctionExpr(super.getLine(), op, expr.rebind(vars), a);
+    }
+
     private TextValue readOp(Value<?> v) {
-        System.out.print(v);
+        Context c = Context.current();
+        String text;
+        try {
+            // O prompt e o que ja foi impresso precisam aparecer antes de
+            // esperar pela entrada. Sem prompts (entrada de um pipe) a saida
+            // continua no buffer.
+            if (c.prompts()) {
+                Value.write(v, c.output());
+                c.output().flush();
+            }
+
+            text = c.input().readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
-        String text = input.nextLine().trim();
+        if (text == null)
+            return null;
+
+        text = text.trim();
         return text.isEmpty() ? null : new TextValue(text);
     }
 
+    // Usa o gerador da execucao corrente, que pode ter semente (mdi --seed).
     private NumberValue randomOp(Value<?> v) {
-        NumberValue nv = (NumberValue) v;
-        int n = nv.value();
-        Random rand = new Random();
-        int r = rand.nextInt(n);
-        
+        if (!(v instanceof NumberValue) || ((NumberValue) v).intValue() <= 0)
+            Utils.abort(super.getLine());
+
+        int r = Context.current().random().nextInt(((NumberValue) v).intValue());
         return new NumberValue(r);
     }
 
     private NumberValue lengthOp(Value<?> v) {
-        if (v instanceof ListValue){
-            ListValue lv = (ListValue) v;
+        int length;
+        if (v instanceof ListValue) {
+            length = ((ListValue) v).value().size();
+        } else if (v instanceof MapValue) {
+            length = ((MapValue) v).value().size();
+        } else if (v instanceof TextValue) {
+            length = ((TextValue) v).length();
+        } else {
+            Utils.abort(super.getLine());
+            return null;
+        }
 
-            int length = 0;
-            for (Value<?> variable : lv.value()) {
-                length++;
-            }
-            return (new NumberValue(length));
-            
-        }else{Utils.abort(super.getLine()); return null;}
+        return new NumberValue(length);
     }
 
+    // keys e values devolvem visoes sobre o proprio mapa, sem copiar.
     private ListValue keysOp(Value<?> v) {
-        if (v instanceof MapValue){
-            MapValue mv = (MapValue) v;
-            Map<Value<?>, Value<?>> m = new HashMap<Value<?>, Value<?>>(mv.value());
+        if (!(v instanceof MapValue))
+            Utils.abort(super.getLine());
 
-            List <Value<?>> l = new ArrayList<Value<?>>();
-            for (Map.Entry<Value<?>, Value<?>> pair : m.entrySet()) {
-                Value<?> key = pair.getKey();
-                if (key == null)
-                    Utils.abort(super.getLine());
-                l.add(key);
-            }
+        Map<Value<?>, Value<?>> m = ((MapValue) v).value();
+        if (m instanceof PackedMap)
+            return new ListValue(((PackedMap) m).keyView());
 
-            return new ListValue(l);
-        }else{Utils.abort(super.getLine()); return null;}
+        return new ListValue(new PackedList(m.keySet()));
     }
 
     private ListValue valuesOp(Value<?> v) {
-        if (v instanceof MapValue){
-            MapValue mv = (MapValue) v;
-            Map<Value<?>, Value<?>> m = new HashMap<Value<?>, Value<?>>(mv.value());
+        if (!(v instanceof MapValue))
+            Utils.abort(super.getLine());
 
-            List <Value<?>> l = new ArrayList<Value<?>>();
-            for (Map.Entry<Value<?>, Value<?>> pair : m.entrySet()) {
-                Value<?> value = pair.getValue();
-                if (value == null)
-                    Utils.abort(super.getLine());
-                l.add(value);
-            }
+        Map<Value<?>, Value<?>> m = ((MapValue) v).value();
+        if (m instanceof PackedMap)
+            return new ListValue(((PackedMap) m).valueView());
 
-            return new ListValue(l);
-        }else{Utils.abort(super.getLine()); return null;}
+        return new ListValue(new PackedList(m.values()));
     }
 
     private BoolValue toBoolOp(Value<?> v) {
@@ -188,6 +259,235 @@ public class FunctionExpr extends Expr {
         return new NumberValue(n);
     }
 
+    private ListValue sortOp(Value<?> v) {
+        PackedList l = new PackedList(listOf(v));
+        if (l.isPacked())
+            l.sort(null);
+        else
+            l.sort(this::compare);
+
+        return new ListValue(l);
+    }
+
+    private NumberValue sumOp(Value<?> v) {
+        List<Value<?>> l = listOf(v);
+
+        int sum = 0;
+        if (l instanceof PackedList && ((PackedList) l).isPacked()) {
+            PackedList pl = (PackedList) l;
+            for (int i = 0; i < pl.size(); i++)
+                sum += pl.getInt(i);
+        } else {
+            for (Value<?> e : l) {
+                if (!(e instanceof NumberValue))
+                    Utils.abort(super.getLine());
+
+                sum += ((NumberValue) e).intValue();
+            }
+        }
+
+        return new NumberValue(sum);
+    }
+
+    // sign -1 devolve o menor elemento, 1 o maior; lista vazia devolve null.
+    private Value<?> minMaxOp(Value<?> v, int sign) {
+        List<Value<?>> l = listOf(v);
+        if (l.isEmpty())
+            return null;
+
+        if (l instanceof PackedList && ((PackedList) l).isPacked()) {
+            PackedList pl = (PackedList) l;
+            int best = pl.getInt(0);
+            for (int i = 1; i < pl.size(); i++) {
+                int n = pl.getInt(i);
+                if (Integer.compare(n, best) * sign > 0)
+                    best = n;
+            }
+            return new NumberValue(best);
+        }
+
+        Value<?> best = l.get(0);
+        for (Value<?> e : l) {
+            if (compare(e, best) * sign > 0)
+                best = e;
+        }
+
+        return best;
+    }
+
+    private BoolValue containsOp(Value<?> v, Value<?> a) {
+        boolean b;
+        if (v instanceof ListValue) {
+            b = ((ListValue) v).value().indexOf(a) >= 0;
+        } else if (v instanceof MapValue) {
+            b = ((MapValue) v).value().containsKey(a);
+        } else if (v instanceof TextValue && a instanceof TextValue) {
+            b = ((TextValue) v).value().contains(((TextValue) a).value());
+        } else {
+            Utils.abort(super.getLine());
+            return null;
+        }
+
+        return new BoolValue(b);
+    }
+
+    private NumberValue indexOfOp(Value<?> v, Value<?> a) {
+        int i;
+        if (v instanceof ListValue) {
+            i = ((ListValue) v).value().indexOf(a);
+        } else if (v instanceof TextValue && a instanceof TextValue) {
+            i = ((TextValue) v).value().indexOf(((TextValue) a).value());
+        } else {
+            Utils.abort(super.getLine());
+            return null;
+        }
+
+        return new NumberValue(i);
+    }
+
+    private Value<?> reverseOp(Value<?> v) {
+        if (v instanceof TextValue) {
+            StringBuilder sb = new StringBuilder(((TextValue) v).value());
+            return new TextValue(sb.reverse());
+        }
+
+        List<Value<?>> l = listOf(v);
+        PackedList r = new PackedList(l.size());
+        for (int i = l.size() - 1; i >= 0; i--)
+            r.add(l.get(i));
+
+        return new ListValue(r);
+    }
+
+    private TextValue joinOp(Value<?> v, Value<?> a) {
+        List<Value<?>> l = listOf(v);
+        if (!(a instanceof TextValue))
+            Utils.abort(super.getLine());
+
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (int i = 0; i < l.size(); i++) {
+                if (i > 0)
+                    a.write(sb);
+
+                Value.write(l.get(i), sb);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new TextValue(sb);
+    }
+
+    // Quantas vezes a aparece na lista, ou entre os valores do mapa.
+    private NumberValue countOp(Value<?> v, Value<?> a) {
+        Collection<Value<?>> c;
+        if (v instanceof ListValue)
+            c = ((ListValue) v).value();
+        else if (v instanceof MapValue)
+            c = ((MapValue) v).value().values();
+        else {
+            Utils.abort(super.getLine());
+            return null;
+        }
+
+        int count = 0;
+        if (c instanceof PackedList && ((PackedList) c).isPacked()) {
+            PackedList pl = (PackedList) c;
+            if (a instanceof NumberValue) {
+                int n = ((NumberValue) a).intValue();
+                for (int i = 0; i < pl.size(); i++) {
+                    if (pl.getInt(i) == n)
+                        count++;
+                }
+            }
+        } else {
+            for (Value<?> e : c) {
+                if (Objects.equals(e, a))
+                    count++;
+            }
+        }
+
+        return new NumberValue(count);
+    }
+
+    private ListValue rangeOp(Value<?> start, Value<?> end, Value<?> step) {
+        if (!(start instanceof NumberValue) || !(end instanceof NumberValue) ||
+                !(step instanceof NumberValue) || ((NumberValue) step).intValue() == 0)
+            Utils.abort(super.getLine());
+
+        try {
+            return new ListValue(new RangeList(((NumberValue) start).intValue(),
+                ((NumberValue) end).intValue(), ((NumberValue) step).intValue()));
+        } catch (IllegalArgumentException e) {
+            Utils.abort(super.getLine());
+            return null;
+        }
+    }
+
+    // As linhas so sao lidas quando a lista e percorrida.
+    private ListValue linesOp(Value<?> v) {
+        if (!(v instanceof TextValue))
+            Utils.abort(super.getLine());
+
+        Path path = Context.current().resolve(((TextValue) v).value());
+        if (!Files.isRegularFile(path) || !Files.isReadable(path))
+            Utils.abort(super.getLine());
+
+        return new ListValue(new FileLines(path));
+    }
+
+    // Arquivo inexistente ou mal formado aborta na linha da chamada.
+    private Value<?> loadOp(Value<?> v, boolean csv) {
+        if (!(v instanceof TextValue))
+            Utils.abort(super.getLine());
+
+        Path path = Context.current().resolve(((TextValue) v).value());
+        try {
+            return csv ? DataLoader.loadCsv(path) : DataLoader.loadJson(path);
+        } catch (IOException e) {
+            Utils.abort(super.getLine());
+            return null;
+        }
+    }
+
+    private ListValue splitOp(Value<?> v, Value<?> a) {
+        if (!(v instanceof TextValue) || !(a instanceof TextValue) || ((TextValue) a).length() == 0)
+            Utils.abort(super.getLine());
+
+        String s = ((TextValue) v).value();
+        String sep = ((TextValue) a).value();
+
+        PackedList l = new PackedList();
+        int from = 0;
+        for (int i = s.indexOf(sep); i >= 0; i = s.indexOf(sep, from)) {
+            l.add(new TextValue(s.substring(from, i)));
+            from = i + sep.length();
+        }
+        l.add(new TextValue(s.substring(from)));
+
+        return new ListValue(l);
+    }
+
+    private List<Value<?>> listOf(Value<?> v) {
+        if (!(v instanceof ListValue))
+            Utils.abort(super.getLine());
+
+        return ((ListValue) v).value();
+    }
+
+    // Ordem entre dois numeros ou dois textos; outras combinacoes abortam.
+    private int compare(Value<?> v1, Value<?> v2) {
+        if (v1 instanceof NumberValue && v2 instanceof NumberValue)
+            return Integer.compare(((NumberValue) v1).intValue(), ((NumberValue) v2).intValue());
+
+        if (v1 instanceof TextValue && v2 instanceof TextValue)
+            return ((TextValue) v1).value().compareTo(((TextValue) v2).value());
+
+        Utils.abort(super.getLine());
+        return 0;
+    }
+
     private TextValue toStrOp(Value<?> v) {
         String s;
         if (v == null) {
@@ -207,12 +507,15 @@ public class FunctionExpr extends Expr {
         } else if (v instanceof TextValue) {
             TextValue sv = (TextValue) v;
             s = sv.value();
-        } else if (v instanceof ListValue) {
-            ListValue lv = (ListValue) v;
-            s = lv.toString();
-        } else if (v instanceof MapValue) {
-            MapValue mv = (MapValue) v;
-            s = mv.toString();
+        } else if (v instanceof ListValue || v instanceof MapValue) {
+            // O texto fica no builder e so vira String se for necessario.
+            StringBuilder sb = new StringBuilder();
+            try {
+                v.write(sb);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new TextValue(sb);
         }
         else {
             s = "null";
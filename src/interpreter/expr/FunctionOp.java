@@ -8,5 +8,19 @@ public enum FunctionOp {
     VALUES,
     TOBOOL,
     TOINT,
-    TOSTR
+    TOSTR,
+    SORT,
+    SUM,
+    MIN,
+    MAX,
+    CONTAINS,
+    INDEX_OF,
+    REVERSE,
+    JOIN,
+    COUNT,
+    RANGE,
+    LINES,
+    SPLIT,
+    LOADCSV,
+    LOADJSON
 }
@@ -1,7 +1,6 @@
 package interpreter.expr;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 
 import interpreter.util.Utils;
 import interpreter.value.BoolValue;
@@ -20,9 +19,21 @@ public class IfListItem extends ListItem{
     }
 
     @Override
-    public List<Value<?>> items() {
-        List<Value<?>> l = new ArrayList<Value<?>>();
-        
+    public void analyze(Effects e) {
+        expr.analyze(e);
+        thenItem.analyze(e);
+        if (elseItem != null)
+            elseItem.analyze(e);
+    }
+
+    @Override
+    public ListItem rebind(Map<Variable, Variable> vars) {
+        return new IfListItem(super.getLine(), expr.rebind(vars), thenItem.rebind(vars),
+            elseItem != null ? elseItem.rebind(vars) : null);
+    }
+
+    @Override
+    public void emit(ItemSink out) {
         Value<?> v = expr.expr();
         if (!(v instanceof BoolValue))
                 Utils.abort(super.getLine());
@@ -31,10 +42,8 @@ public class IfListItem extends ListItem{
         boolean b = bv.value();
 
         if(b)
-            l.addAll(thenItem.items());
-        else
-            l.addAll(elseItem.items());
-
-        return l;
+            thenItem.emit(out);
+        else if (elseItem != null)
+            elseItem.emit(out);
     }
 }
@@ -0,0 +1,18 @@
+package interpreter.expr;
+
+import java.util.List;
+
+import interpreter.value.Value;
+
+// Destino dos elementos gerados pelos itens de uma lista: a lista sendo
+// montada ou, quando a lista so e percorrida, o corpo do for.
+public interface ItemSink {
+
+    void add(Value<?> v);
+
+    default void addAll(List<Value<?>> l) {
+        for (Value<?> v : l)
+            add(v);
+    }
+
+}
@@ -2,8 +2,10 @@ package interpreter.expr;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import interpreter.value.ListValue;
+import interpreter.value.PackedList;
 import interpreter.value.Value;
 
 public class ListExpr extends Expr{
@@ -20,12 +22,93 @@ public class ListExpr extends Expr{
 
     @Override
     public Value<?> expr() {
-        List<Value<?>> l = new ArrayList<Value<?>>();
+        PackedList l = null;
+        int first = 0;
 
-        for(ListItem item : list){
-            l.addAll(item.items());
+        // [...acc, x] compartilha os arrays de acc em vez de copia-los.
+        if (!list.isEmpty() && list.get(0) instanceof SpreadListItem) {
+            List<Value<?>> items = ((SpreadListItem) list.get(0)).list();
+            if (items instanceof PackedList) {
+                l = ((PackedList) items).fork();
+            } else {
+                l = new PackedList(items.size() + list.size() - 1);
+                l.addAll(items);
+            }
+            first = 1;
         }
 
+        if (l == null) {
+            int n = capacity();
+            l = n < 0 ? new PackedList() : new PackedList(n);
+        }
+
+        ItemSink out = new Collector(l);
+        for (int i = first; i < list.size(); i++)
+            list.get(i).emit(out);
+
         return new ListValue(l);
+    }
+
+    // Gera os elementos um a um em out, sem montar a lista.
+    public void emit(ItemSink out) {
+        for (ListItem item : list)
+            item.emit(out);
+    }
+
+    // Se os elementos podem ser entregues um a um a um laco cujo corpo tem
+    // os efeitos body, em vez de montar a lista inteira antes: nem a lista
+    // nem o corpo podem observar ou alterar o que o outro usa.
+    public boolean canStream(Effects body) {
+        Effects e = new Effects();
+        analyze(e);
+        return e.independentOf(body);
+    }
+
+    @Override
+    public void analyze(Effects e) {
+        for (ListItem item : list)
+            item.analyze(e);
+    }
+
+    @Override
+    public Expr rebind(Map<Variable, Variable> vars) {
+        ListExpr l = new ListExpr(super.getLine());
+        for (ListItem item : list)
+            l.addItem(item.rebind(vars));
+
+        return l;
+    }
+
+    static class Collector implements ItemSink {
+
+        private final PackedList list;
+
+        Collector(PackedList list) {
+            this.list = list;
+        }
+
+        @Override
+        public void add(Value<?> v) {
+            this.list.add(v);
+        }
+
+        @Override
+        public void addAll(List<Value<?>> l) {
+            this.list.addAll(l);
+        }
+
+    }
+
+    // Tamanho exato quando todos os itens sabem quantos elementos geram.
+    private int capacity() {
+        int n = 0;
+        for (ListItem item : list) {
+            int c = item.count();
+            if (c < 0)
+                return -1;
+            n += c;
+        }
+
+        return n;
     }    
 }
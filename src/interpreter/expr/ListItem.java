@@ -1,8 +1,6 @@
 package interpreter.expr;
 
-import java.util.List;
-
-import interpreter.value.Value;
+import java.util.Map;
 
 public abstract class ListItem {
     private int line;
@@ -15,5 +13,17 @@ public abstract class ListItem {
         return this.line;
     }
 
-    public abstract List<Value<?>> items();
+    // Entrega os elementos deste item, em ordem, a out.
+    public abstract void emit(ItemSink out);
+
+    public abstract void analyze(Effects e);
+
+    // Veja Expr.rebind().
+    public abstract ListItem rebind(Map<Variable, Variable> vars);
+
+    // Quantos elementos emit() vai produzir, ou -1 se nao der para saber
+    // sem avaliar.
+    public int count() {
+        return -1;
+    }
 }
\ No newline at end of file
@@ -1,12 +1,12 @@
 package interpreter.expr;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import interpreter.util.Utils;
 import interpreter.value.MapValue;
+import interpreter.value.PackedMap;
 import interpreter.value.Value;
 
 public class MapExpr extends Expr {
@@ -24,7 +24,7 @@ public class MapExpr extends Expr {
 
     @Override
     public Value<?> expr() {
-        Map<Value<?>, Value<?>> m = new HashMap<Value<?>, Value<?>>();
+        Map<Value<?>, Value<?>> m = new PackedMap(map.size());
         
         for (MapItem item : map) {
             Value<?> key = item.key.expr();
@@ -39,4 +39,21 @@ public class MapExpr extends Expr {
         return mv;
     }
 
+    @Override
+    public void analyze(Effects e) {
+        for (MapItem item : map) {
+            item.key.analyze(e);
+            item.value.analyze(e);
+        }
+    }
+
+    @Override
+    public Expr rebind(Map<Variable, Variable> vars) {
+        MapExpr m = new MapExpr(super.getLine());
+        for (MapItem item : map)
+            m.addItem(new MapItem(item.key.rebind(vars), item.value.rebind(vars)));
+
+        return m;
+    }
+
 }
@@ -28,4 +28,13 @@ public class SafeVariable extends Variable {
         this.value = value;
         this.initialized = true;
     }
+
+    public boolean initialized() {
+        return initialized;
+    }
+
+    public Variable copy() {
+        return new SafeVariable(super.getLine(), super.getName(), super.isConstant());
+    }
+
 }
@@ -1,5 +1,7 @@
 package interpreter.expr;
 
+import java.util.Map;
+
 import interpreter.value.Value;
 
 public abstract class SetExpr extends Expr {
@@ -10,5 +12,10 @@ public abstract class SetExpr extends Expr {
     
     public abstract Value<?> expr();
     public abstract void setValue(Value<?> value);
+
+    // Efeitos de atribuir a esta expressao.
+    public abstract void analyzeWrite(Effects e);
+
+    public abstract SetExpr rebind(Map<Variable, Variable> vars);
     
 }
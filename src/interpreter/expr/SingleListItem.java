@@ -1,9 +1,6 @@
 package interpreter.expr;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import interpreter.value.Value;
+import java.util.Map;
 
 public class SingleListItem extends ListItem{
     private Expr expr;
@@ -14,10 +11,22 @@ public class SingleListItem extends ListItem{
     }
 
     @Override
-    public List<Value<?>> items() {
-        List<Value<?>> l = new ArrayList<Value<?>>();
-        l.add(expr.expr());
+    public void emit(ItemSink out) {
+        out.add(expr.expr());
+    }
+
+    @Override
+    public void analyze(Effects e) {
+        expr.analyze(e);
+    }
 
-        return l;
+    @Override
+    public ListItem rebind(Map<Variable, Variable> vars) {
+        return new SingleListItem(super.getLine(), expr.rebind(vars));
+    }
+
+    @Override
+    public int count() {
+        return 1;
     }
 }
@@ -1,7 +1,7 @@
 package interpreter.expr;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import interpreter.value.ListValue;
 import interpreter.value.Value;
@@ -15,18 +15,29 @@ public class SpreadListItem extends ListItem{
         this.expr = expr;
     }
 
-    @Override
-    public List<Value<?>> items() {
-        List<Value<?>> l = new ArrayList<Value<?>>();
-        if(expr.expr() instanceof ListValue){
-            ListValue sl = (ListValue) expr.expr();
-            l.addAll(sl.value());
-        }
-        else
+    // A lista espalhada, sem copia.
+    public List<Value<?>> list() {
+        Value<?> v = expr.expr();
+        if (!(v instanceof ListValue))
             Utils.abort(super.getLine());
-            
-            
-        return l;
+
+        ListValue sl = (ListValue) v;
+        return sl.value();
+    }
+
+    @Override
+    public void analyze(Effects e) {
+        expr.analyze(e);
+    }
+
+    @Override
+    public ListItem rebind(Map<Variable, Variable> vars) {
+        return new SpreadListItem(super.getLine(), expr.rebind(vars));
+    }
+
+    @Override
+    public void emit(ItemSink out) {
+        out.addAll(list());
     }
     
 }
@@ -1,5 +1,7 @@
 package interpreter.expr;
 
+import java.util.Map;
+
 import interpreter.util.Utils;
 import interpreter.value.BoolValue;
 import interpreter.value.NumberValue;
@@ -16,6 +18,14 @@ public class UnaryExpr extends Expr {
         this.op = op;
     }
 
+    public Expr getExpr() {
+        return expr;
+    }
+
+    public UnaryOp getOp() {
+        return op;
+    }
+
     @Override
     public Value<?> expr() {
         switch (op) {
@@ -37,6 +47,18 @@ public class UnaryExpr extends Expr {
         }
     }
 
+    @Override
+    public void analyze(Effects e) {
+        expr.analyze(e);
+        if (op != UnaryOp.NEG && op != UnaryOp.NOT && expr instanceof SetExpr)
+            ((SetExpr) expr).analyzeWrite(e);
+    }
+
+    @Override
+    public Expr rebind(Map<Variable, Variable> vars) {
+        return new UnaryExpr(super.getLine(), expr.rebind(vars), op);
+    }
+
     private Value<?> negOp() {
         Value<?> v = expr.expr();
         if (v instanceof NumberValue) {
@@ -29,4 +29,12 @@ public class UnsafeVariable extends Variable {
         this.initialized = true;
     }
 
+    public boolean initialized() {
+        return initialized;
+    }
+
+    public Variable copy() {
+        return new UnsafeVariable(super.getLine(), super.getName(), super.isConstant());
+    }
+
 }
@@ -1,5 +1,7 @@
 package interpreter.expr;
 
+import java.util.Map;
+
 import interpreter.value.Value;
 
 public abstract class Variable extends SetExpr {
@@ -23,5 +25,27 @@ public abstract class Variable extends SetExpr {
 
     public abstract Value<?> expr();
     public abstract void setValue(Value<?> value);
+
+    // Se ja recebeu algum valor.
+    public abstract boolean initialized();
+
+    // Variavel nova, sem valor, com o mesmo nome.
+    public abstract Variable copy();
+
+    @Override
+    public void analyze(Effects e) {
+        e.read(this);
+    }
+
+    @Override
+    public void analyzeWrite(Effects e) {
+        e.write(this);
+    }
+
+    @Override
+    public Variable rebind(Map<Variable, Variable> vars) {
+        Variable v = vars.get(this);
+        return v != null ? v : this;
+    }
     
 }
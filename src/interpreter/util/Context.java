@@ -0,0 +1,134 @@
+package interpreter.util;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+// Estado de uma execucao do interpretador. Cada thread trabalha com o
+// contexto da execucao a que pertence; threads sem contexto recebem um
+// novo, sem semente.
+public class Context {
+
+    private static final ThreadLocal<Context> CURRENT = new ThreadLocal<Context>();
+
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final SplittableRandom random;
+    private final BufferedReader input;
+    private OutputBuffer output;
+    private boolean prompts;
+    private Path directory;
+
+    public Context() {
+        this(new SplittableRandom());
+    }
+
+    // Com a mesma semente os numeros sorteados se repetem a cada execucao.
+    public Context(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    // Contexto que le de in e escreve em out, em vez da entrada e da saida
+    // padrao.
+    public Context(InputStream in, OutputStream out) {
+        this(new SplittableRandom(), in, out);
+    }
+
+    public Context(long seed, InputStream in, OutputStream out) {
+        this(new SplittableRandom(seed), in, out);
+    }
+
+    private Context(SplittableRandom random) {
+        this(random, System.in, System.out);
+    }
+
+    private Context(SplittableRandom random, InputStream in, OutputStream out) {
+        this.random = random;
+        this.input = new BufferedReader(new InputStreamReader(in), INPUT_BUFFER_SIZE);
+        this.output = new OutputBuffer(out);
+        this.prompts = true;
+        this.directory = null;
+    }
+
+    private Context(Context parent, SplittableRandom random) {
+        this.random = random;
+        this.input = parent.input;
+        this.output = parent.output;
+        this.prompts = parent.prompts;
+        this.directory = parent.directory;
+    }
+
+    public static Context current() {
+        Context c = CURRENT.get();
+        if (c == null) {
+            c = new Context();
+            CURRENT.set(c);
+        }
+
+        return c;
+    }
+
+    // Passa a usar c nesta thread e devolve o contexto anterior (ou null).
+    public static Context set(Context c) {
+        Context old = CURRENT.get();
+        if (c == null)
+            CURRENT.remove();
+        else
+            CURRENT.set(c);
+
+        return old;
+    }
+
+    // Contexto para uma tarefa concorrente desta execucao. O gerador e
+    // dividido deste, entao as sequencias de cada tarefa sao deterministicas
+    // desde que as divisoes sejam feitas sempre na mesma ordem.
+    public Context split() {
+        return new Context(this, this.random.split());
+    }
+
+    public SplittableRandom random() {
+        return this.random;
+    }
+
+    // Entrada lida por read(), com um buffer grande sobre a entrada padrao.
+    public BufferedReader input() {
+        return this.input;
+    }
+
+    // Saida de print(), assert() e dos prompts de read().
+    public OutputBuffer output() {
+        return this.output;
+    }
+
+    // Troca a saida, por exemplo por um arquivo (mdi --out) ou por uma com
+    // escrita assincrona. Contextos ja divididos continuam com a anterior.
+    public void setOutput(OutputBuffer output) {
+        this.output = output;
+    }
+
+    public boolean prompts() {
+        return this.prompts;
+    }
+
+    // Desliga os prompts de read(), por exemplo quando a entrada vem de um pipe.
+    public void setPrompts(boolean prompts) {
+        this.prompts = prompts;
+    }
+
+    // Caminho de um arquivo usado pelo programa (lines(), loadcsv()...),
+    // relativo ao diretorio da execucao se houver um.
+    public Path resolve(String name) {
+        return this.directory == null ? Paths.get(name) : this.directory.resolve(name);
+    }
+
+    // Diretorio da execucao, por exemplo o de quem pediu a execucao ao
+    // mdi --daemon, que roda em outro diretorio.
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+}
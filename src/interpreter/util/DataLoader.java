@@ -0,0 +1,363 @@
+package interpreter.util;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import interpreter.value.BoolValue;
+import interpreter.value.ListValue;
+import interpreter.value.MapValue;
+import interpreter.value.NumberValue;
+import interpreter.value.PackedList;
+import interpreter.value.PackedMap;
+import interpreter.value.TextValue;
+import interpreter.value.Value;
+
+// Le arquivos CSV e JSON direto para ListValue e MapValue, sem passar pela
+// analise lexica. As chaves (nomes de colunas e de campos) sao internadas,
+// entao todos os registros compartilham os mesmos TextValue.
+public class DataLoader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Reader in;
+    private char[] buffer;
+    private int pos;
+    private int limit;
+    private int line;
+
+    private Map<String, TextValue> keys;
+
+    private DataLoader(Reader in) {
+        this.in = in;
+        this.buffer = new char[BUFFER_SIZE];
+        this.pos = 0;
+        this.limit = 0;
+        this.line = 1;
+        this.keys = new HashMap<String, TextValue>();
+    }
+
+    // Lista com um mapa por linha, indexado pelos nomes da primeira linha.
+    public static ListValue loadCsv(Path path) throws IOException {
+        try (Reader r = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+            return new DataLoader(r).csv();
+        }
+    }
+
+    public static Value<?> loadJson(Path path) throws IOException {
+        try (Reader r = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+            DataLoader d = new DataLoader(r);
+            Value<?> v = d.json();
+            d.skipSpaces();
+            if (d.peek() != -1)
+                throw d.error("conteudo depois do fim");
+
+            return v;
+        }
+    }
+
+    private int peek() throws IOException {
+        if (this.pos == this.limit) {
+            this.limit = this.in.read(this.buffer, 0, this.buffer.length);
+            this.pos = 0;
+            if (this.limit <= 0) {
+                this.limit = 0;
+                return -1;
+            }
+        }
+
+        return this.buffer[this.pos];
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            this.pos++;
+            if (c == '\n')
+                this.line++;
+        }
+
+        return c;
+    }
+
+    private IOException error(String msg) {
+        return new IOException("linha " + this.line + ": " + msg);
+    }
+
+    private TextValue key(String s) {
+        TextValue k = this.keys.get(s);
+        if (k == null) {
+            k = new TextValue(s);
+            this.keys.put(s, k);
+        }
+
+        return k;
+    }
+
+    // Numeros inteiros viram NumberValue; o resto fica como texto.
+    private static Value<?> field(String s) {
+        if (s.isEmpty())
+            return null;
+
+        int start = s.charAt(0) == '-' ? 1 : 0;
+        if (start < s.length() && s.length() - start <= 10) {
+            boolean digits = true;
+            for (int i = start; i < s.length() && digits; i++)
+                digits = s.charAt(i) >= '0' && s.charAt(i) <= '9';
+
+            if (digits) {
+                long n = Long.parseLong(s);
+                if (n >= Integer.MIN_VALUE && n <= Integer.MAX_VALUE)
+                    return new NumberValue((int) n);
+            }
+        }
+
+        return new TextValue(s);
+    }
+
+    // ---- CSV ----
+
+    private ListValue csv() throws IOException {
+        List<String> header = new ArrayList<String>();
+        if (!row(header))
+            return new ListValue(new PackedList());
+
+        TextValue[] columns = new TextValue[header.size()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = key(header.get(i));
+
+        PackedList rows = new PackedList();
+        List<String> fields = new ArrayList<String>(columns.length);
+        while (row(fields)) {
+            if (fields.size() == 1 && fields.get(0).isEmpty())
+                continue;
+
+            if (fields.size() != columns.length)
+                throw error("esperados " + columns.length + " campos");
+
+            PackedMap m = new PackedMap(columns.length);
+            for (int i = 0; i < columns.length; i++)
+                m.put(columns[i], field(fields.get(i)));
+
+            rows.add(new MapValue(m));
+        }
+
+        return new ListValue(rows);
+    }
+
+    // Le uma linha (que pode ter quebras dentro de aspas); false no fim do arquivo.
+    private boolean row(List<String> fields) throws IOException {
+        fields.clear();
+        if (peek() == -1)
+            return false;
+
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                while (true) {
+                    c = next();
+                    if (c == -1)
+                        throw error("aspas sem fechamento");
+
+                    if (c == '"') {
+                        if (peek() != '"')
+                            break;
+                        next();
+                    }
+                    sb.append((char) c);
+                }
+            } else if (c == ',') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                fields.add(sb.toString());
+                return true;
+            } else if (c != '\r') {
+                sb.append((char) c);
+            }
+        }
+    }
+
+    // ---- JSON ----
+
+    private void skipSpaces() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            next();
+            c = peek();
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        skipSpaces();
+        if (next() != expected)
+            throw error("esperado '" + expected + "'");
+    }
+
+    private Value<?> json() throws IOException {
+        skipSpaces();
+        int c = peek();
+        switch (c) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return new TextValue(string());
+            case 't':
+                word("true");
+                return new BoolValue(true);
+            case 'f':
+                word("false");
+                return new BoolValue(false);
+            case 'n':
+                word("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    return number();
+
+                throw error("valor invalido");
+        }
+    }
+
+    private MapValue object() throws IOException {
+        expect('{');
+        List<Value<?>> pairs = new ArrayList<Value<?>>();
+        skipSpaces();
+        if (peek() == '}') {
+            next();
+        } else {
+            while (true) {
+                skipSpaces();
+                if (peek() != '"')
+                    throw error("esperada uma chave");
+
+                pairs.add(key(string()));
+                expect(':');
+                pairs.add(json());
+
+                skipSpaces();
+                int c = next();
+                if (c == '}')
+                    break;
+                if (c != ',')
+                    throw error("esperado ',' ou '}'");
+            }
+        }
+
+        PackedMap m = new PackedMap(pairs.size() / 2);
+        for (int i = 0; i < pairs.size(); i += 2)
+            m.put(pairs.get(i), pairs.get(i + 1));
+
+        return new MapValue(m);
+    }
+
+    private ListValue array() throws IOException {
+        expect('[');
+        PackedList l = new PackedList();
+        skipSpaces();
+        if (peek() == ']') {
+            next();
+        } else {
+            while (true) {
+                l.add(json());
+
+                skipSpaces();
+                int c = next();
+                if (c == ']')
+                    break;
+                if (c != ',')
+                    throw error("esperado ',' ou ']'");
+            }
+        }
+
+        return new ListValue(l);
+    }
+
+    private void word(String w) throws IOException {
+        for (int i = 0; i < w.length(); i++) {
+            if (next() != w.charAt(i))
+                throw error("valor invalido");
+        }
+    }
+
+    private NumberValue number() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c = peek();
+        while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+            sb.append((char) next());
+            c = peek();
+        }
+
+        // A linguagem so tem inteiros.
+        try {
+            return new NumberValue(Integer.parseInt(sb.toString()));
+        } catch (NumberFormatException e) {
+            throw error("numero nao inteiro ou grande demais: " + sb);
+        }
+    }
+
+    private String string() throws IOException {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = next();
+            if (c == -1 || c == '\n')
+                throw error("texto sem fechamento");
+
+            if (c == '"')
+                return sb.toString();
+
+            if (c != '\\') {
+                sb.append((char) c);
+                continue;
+            }
+
+            c = next();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append((char) c);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    int u = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int d = Character.digit(next(), 16);
+                        if (d < 0)
+                            throw error("escape invalido");
+                        u = u * 16 + d;
+                    }
+                    sb.append((char) u);
+                    break;
+                default:
+                    throw error("escape invalido");
+            }
+        }
+    }
+
+}
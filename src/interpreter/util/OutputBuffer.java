@@ -0,0 +1,247 @@
+package interpreter.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Saida de uma execucao. O texto e juntado em blocos grandes, codificado e
+// escrito direto num canal; nada e escrito antes de o bloco encher ou de
+// flush(), que a execucao chama ao terminar, antes de esperar pela entrada
+// e antes de abortar.
+//
+// No modo assincrono a codificacao e a escrita ficam com uma thread
+// separada. Os blocos circulam entre as duas threads por um numero fixo
+// de buffers: quando todos estao esperando para ser escritos, quem imprime
+// espera a escrita andar.
+public class OutputBuffer extends Writer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFERS = 8;
+
+    private static final CharBuffer CLOSE = CharBuffer.allocate(0);
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private boolean failed;
+    private volatile long bytesWritten;
+
+    private char[] buffer;
+    private int count;
+
+    private final BlockingQueue<CharBuffer> full;
+    private final BlockingQueue<char[]> free;
+    private final Thread writer;
+    private final Object lock;
+    private long submitted;
+    private long written;
+
+    public OutputBuffer(OutputStream out) {
+        this(Channels.newChannel(out), false);
+    }
+
+    public OutputBuffer(WritableByteChannel channel, boolean async) {
+        this.channel = channel;
+        this.encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        this.failed = false;
+        this.bytesWritten = 0;
+        this.buffer = new char[BUFFER_SIZE];
+        this.count = 0;
+        this.lock = new Object();
+
+        if (async) {
+            this.full = new ArrayBlockingQueue<CharBuffer>(BUFFERS);
+            this.free = new ArrayBlockingQueue<char[]>(BUFFERS);
+            for (int i = 1; i < BUFFERS; i++)
+                this.free.add(new char[BUFFER_SIZE]);
+
+            this.writer = new Thread(this::writeLoop, "mdi-output");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        } else {
+            this.full = null;
+            this.free = null;
+            this.writer = null;
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        while (len > 0) {
+            if (this.count == this.buffer.length)
+                drain(false);
+
+            int n = Math.min(len, this.buffer.length - this.count);
+            System.arraycopy(cbuf, off, this.buffer, this.count, n);
+            this.count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        while (len > 0) {
+            if (this.count == this.buffer.length)
+                drain(false);
+
+            int n = Math.min(len, this.buffer.length - this.count);
+            str.getChars(off, off + n, this.buffer, this.count);
+            this.count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) {
+        if (csq instanceof String) {
+            write((String) csq, start, end - start);
+            return this;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (this.count == this.buffer.length)
+                drain(false);
+
+            this.buffer[this.count++] = csq.charAt(i);
+        }
+
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        String s = String.valueOf(csq);
+        return append(s, 0, s.length());
+    }
+
+    // Passa o bloco adiante. Com all false um surrogate no final fica para
+    // o proximo bloco, para nao separar o par.
+    private void drain(boolean all) {
+        int n = this.count;
+        if (!all && n > 0 && Character.isHighSurrogate(this.buffer[n - 1]))
+            n--;
+
+        if (n == 0)
+            return;
+
+        if (this.writer == null) {
+            encode(CharBuffer.wrap(this.buffer, 0, n));
+            if (n < this.count)
+                this.buffer[0] = this.buffer[n];
+        } else {
+            char[] next;
+            try {
+                next = this.free.take();
+                this.full.put(CharBuffer.wrap(this.buffer, 0, n));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            this.submitted++;
+            if (n < this.count)
+                next[0] = this.buffer[n];
+            this.buffer = next;
+        }
+
+        this.count -= n;
+    }
+
+    private void encode(CharBuffer chars) {
+        while (true) {
+            CoderResult r = this.encoder.encode(chars, this.bytes, true);
+            writeBytes();
+            if (!r.isOverflow())
+                break;
+        }
+        this.encoder.reset();
+    }
+
+    // Como no PrintStream, erros de escrita (um pipe fechado, por exemplo)
+    // nao interrompem o programa; o resto da saida e descartado.
+    private void writeBytes() {
+        this.bytes.flip();
+        try {
+            while (!this.failed && this.bytes.hasRemaining())
+                this.bytesWritten += this.channel.write(this.bytes);
+        } catch (IOException e) {
+            this.failed = true;
+        }
+        this.bytes.clear();
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                CharBuffer chars = this.full.take();
+                if (chars == CLOSE)
+                    return;
+
+                encode(chars);
+                this.free.put(chars.array());
+                synchronized (this.lock) {
+                    this.written++;
+                    this.lock.notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            // So acontece se a JVM estiver terminando.
+        }
+    }
+
+    // Bytes ja escritos no canal; depois de flush() inclui tudo o que foi
+    // impresso ate ali.
+    public long bytes() {
+        return this.bytesWritten;
+    }
+
+    @Override
+    public void flush() {
+        drain(true);
+
+        if (this.writer != null) {
+            synchronized (this.lock) {
+                while (this.written < this.submitted) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    // Escreve o que falta e termina a thread de escrita. O canal continua
+    // aberto: ele pertence a quem criou este buffer.
+    @Override
+    public void close() {
+        flush();
+
+        if (this.writer != null && this.writer.isAlive()) {
+            try {
+                this.full.put(CLOSE);
+                this.writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -1,13 +1,14 @@
 package interpreter.util;
 
+import interpreter.MiniDartException;
+
 public class Utils {
 
     private Utils() {
     }
 
     public static void abort(int line) {
-        System.out.printf("%02d: Operacao invalida\n", line);
-        System.exit(1);
+        throw new MiniDartException(line, "Operacao invalida");
     }
 
-}
\ No newline at end of file
+}
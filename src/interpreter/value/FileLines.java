@@ -0,0 +1,117 @@
+package interpreter.value;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Linhas de um arquivo. Cada iteracao le o arquivo de novo por um
+// FileChannel, decodificando uma linha por vez, sem guardar o arquivo na
+// memoria. Tamanho e acesso por indice carregam todas as linhas uma vez,
+// por isso a lista nao e RandomAccess.
+public class FileLines extends AbstractList<Value<?>> implements Versioned {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path path;
+    private volatile PackedList loaded;
+
+    public FileLines(Path path) {
+        this.path = path;
+        this.loaded = null;
+    }
+
+    @Override
+    public int version() {
+        return 0;
+    }
+
+    private synchronized PackedList load() {
+        if (this.loaded == null) {
+            PackedList l = new PackedList();
+            for (Iterator<Value<?>> it = iterator(); it.hasNext();)
+                l.add(it.next());
+
+            this.loaded = l;
+        }
+
+        return this.loaded;
+    }
+
+    @Override
+    public Value<?> get(int index) {
+        return load().get(index);
+    }
+
+    @Override
+    public int size() {
+        return load().size();
+    }
+
+    @Override
+    public Iterator<Value<?>> iterator() {
+        if (this.loaded != null)
+            return this.loaded.iterator();
+
+        return new LineIterator();
+    }
+
+    private class LineIterator implements Iterator<Value<?>> {
+
+        private BufferedReader reader;
+        private String next;
+
+        LineIterator() {
+            try {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                this.reader = new BufferedReader(Channels.newReader(channel,
+                    StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE),
+                    BUFFER_SIZE), BUFFER_SIZE);
+                this.next = advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Le a proxima linha e fecha o arquivo ao chegar no fim.
+        private String advance() throws IOException {
+            String line = this.reader.readLine();
+            if (line == null)
+                this.reader.close();
+
+            return line;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Value<?> next() {
+            if (this.next == null)
+                throw new NoSuchElementException();
+
+            TextValue v = new TextValue(this.next);
+            try {
+                this.next = advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return v;
+        }
+
+    }
+
+}
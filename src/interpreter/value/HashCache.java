@@ -0,0 +1,45 @@
+package interpreter.value;
+
+import java.util.List;
+
+// Hash estrutural de uma lista ou mapa, valido enquanto a colecao estiver
+// na mesma versao e cada lista ou mapa aninhado ainda tiver o mesmo hash
+// guardado de quando este foi calculado.
+class HashCache {
+
+    final int hash;
+    private final int version;
+    private final Value<?>[] nested;
+    private final HashCache[] nestedHashes;
+
+    HashCache(int hash, int version, List<Value<?>> nested) {
+        this.hash = hash;
+        this.version = version;
+        this.nested = nested.toArray(new Value<?>[nested.size()]);
+        this.nestedHashes = new HashCache[this.nested.length];
+        for (int i = 0; i < this.nested.length; i++)
+            this.nestedHashes[i] = current(this.nested[i]);
+    }
+
+    boolean isValid(Object collection) {
+        if (!(collection instanceof Versioned) || ((Versioned) collection).version() != this.version)
+            return false;
+
+        for (int i = 0; i < this.nested.length; i++) {
+            if (this.nestedHashes[i] == null || current(this.nested[i]) != this.nestedHashes[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static HashCache current(Value<?> v) {
+        if (v instanceof ListValue)
+            return ((ListValue) v).cachedHash();
+        if (v instanceof MapValue)
+            return ((MapValue) v).cachedHash();
+
+        return null;
+    }
+
+}
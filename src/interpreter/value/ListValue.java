@@ -1,13 +1,17 @@
 package interpreter.value;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ListValue extends Value<List<Value<?>>> {
 
     private List<Value<?>> value;
+    private HashCache hash;
 
     public ListValue(List<Value<?>> value) {
         this.value = value;
+        this.hash = null;
     }
 
     @Override
@@ -15,9 +19,46 @@ public class ListValue extends Value<List<Value<?>>> {
         return this.value;
     }
 
+    // Lista que pode ser alterada no lugar. Listas somente leitura (RangeList,
+    // MapView) sao materializadas numa PackedList na primeira vez.
+    public List<Value<?>> mutableValue() {
+        if (!(this.value instanceof PackedList)) {
+            this.value = new PackedList(this.value);
+            this.hash = null;
+        }
+
+        return this.value;
+    }
+
     @Override
     public int hashCode() {
-        return this.value.hashCode();
+        HashCache c = this.cachedHash();
+        if (c != null)
+            return c.hash;
+
+        int h = 1;
+        List<Value<?>> nested = new ArrayList<Value<?>>();
+        if (this.value instanceof PackedList && ((PackedList) this.value).isPacked()) {
+            PackedList pl = (PackedList) this.value;
+            for (int i = 0; i < pl.size(); i++)
+                h = 31 * h + Integer.hashCode(pl.getInt(i));
+        } else {
+            for (Value<?> v : this.value) {
+                h = 31 * h + (v == null ? 0 : v.hashCode());
+                if (v instanceof ListValue || v instanceof MapValue)
+                    nested.add(v);
+            }
+        }
+
+        if (this.value instanceof Versioned)
+            this.hash = new HashCache(h, ((Versioned) this.value).version(), nested);
+
+        return h;
+    }
+
+    HashCache cachedHash() {
+        HashCache c = this.hash;
+        return c != null && c.isValid(this.value) ? c : null;
     }
 
     @Override
@@ -25,27 +66,48 @@ public class ListValue extends Value<List<Value<?>>> {
         if (this == obj) {
             return true;
         } else if (obj instanceof ListValue) {
-            return this.value == ((ListValue) obj).value;
+            ListValue other = (ListValue) obj;
+            if (this.value.size() != other.value.size())
+                return false;
+
+            HashCache c1 = this.cachedHash();
+            HashCache c2 = other.cachedHash();
+            if (c1 != null && c2 != null && c1.hash != c2.hash)
+                return false;
+
+            return this.value.equals(other.value);
         } else {
             return false;
         }
     }
 
     @Override
-    public String toString() {
-        StringBuffer sb = new StringBuffer();
-        sb.append("[");
+    public void write(Appendable out) throws IOException {
+        out.append("[");
 
-        for (Value<?> v : this.value) {
-            sb.append(v == null ? "null" : v.toString());
-            sb.append(", ");
+        if (this.value instanceof PackedList && ((PackedList) this.value).isPacked()) {
+            PackedList pl = (PackedList) this.value;
+            for (int i = 0; i < pl.size(); i++) {
+                if (i > 0)
+                    out.append(", ");
+                out.append(Integer.toString(pl.getInt(i)));
+            }
+        } else {
+            boolean first = true;
+            for (Value<?> v : this.value) {
+                if (!first)
+                    out.append(", ");
+                Value.write(v, out);
+                first = false;
+            }
         }
 
-        if (sb.length() > 1)
-            sb.setLength(sb.length() - 2);
+        out.append("]");
+    }
 
-        sb.append("]");
-        return sb.toString();
+    @Override
+    public String toString() {
+        return this.render();
     }
 
 }
@@ -1,13 +1,18 @@
 package interpreter.value;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class MapValue extends Value<Map<Value<?>, Value<?>>> {
 
     private Map<Value<?>, Value<?>> value;
+    private HashCache hash;
 
     public MapValue(Map<Value<?>, Value<?>> value) {
         this.value = value;
+        this.hash = null;
     }
 
     @Override
@@ -17,7 +22,32 @@ public class MapValue extends Value<Map<Value<?>, Value<?>>> {
 
     @Override
     public int hashCode() {
-        return this.value.hashCode();
+        HashCache c = this.cachedHash();
+        if (c != null)
+            return c.hash;
+
+        int h = 0;
+        List<Value<?>> nested = new ArrayList<Value<?>>();
+        for (Map.Entry<Value<?>, Value<?>> e : this.value.entrySet()) {
+            Value<?> k = e.getKey();
+            Value<?> v = e.getValue();
+            h += (k == null ? 0 : k.hashCode()) ^ (v == null ? 0 : v.hashCode());
+
+            if (k instanceof ListValue || k instanceof MapValue)
+                nested.add(k);
+            if (v instanceof ListValue || v instanceof MapValue)
+                nested.add(v);
+        }
+
+        if (this.value instanceof Versioned)
+            this.hash = new HashCache(h, ((Versioned) this.value).version(), nested);
+
+        return h;
+    }
+
+    HashCache cachedHash() {
+        HashCache c = this.hash;
+        return c != null && c.isValid(this.value) ? c : null;
     }
 
     @Override
@@ -25,32 +55,42 @@ public class MapValue extends Value<Map<Value<?>, Value<?>>> {
         if (this == obj) {
             return true;
         } else if (obj instanceof MapValue) {
-            return this.value == ((MapValue) obj).value;
+            MapValue other = (MapValue) obj;
+            if (this.value.size() != other.value.size())
+                return false;
+
+            HashCache c1 = this.cachedHash();
+            HashCache c2 = other.cachedHash();
+            if (c1 != null && c2 != null && c1.hash != c2.hash)
+                return false;
+
+            return this.value.equals(other.value);
         } else {
             return false;
         }
     }
 
     @Override
-    public String toString() {
-        StringBuffer sb = new StringBuffer();
-        sb.append("{");
+    public void write(Appendable out) throws IOException {
+        out.append("{");
 
+        boolean first = true;
         for (Map.Entry<Value<?>, Value<?>> e : this.value.entrySet()) {
-            Value<?> k = e.getKey();
-            Value<?> v = e.getValue();
+            if (!first)
+                out.append(", ");
 
-            sb.append(k.toString());
-            sb.append(":");
-            sb.append(v == null ? "null" : v.toString());
-            sb.append(", ");
+            Value.write(e.getKey(), out);
+            out.append(":");
+            Value.write(e.getValue(), out);
+            first = false;
         }
 
-        if (sb.length() > 1)
-            sb.setLength(sb.length() - 2);
+        out.append("}");
+    }
 
-        sb.append("}");
-        return sb.toString();
+    @Override
+    public String toString() {
+        return this.render();
     }
 
 }
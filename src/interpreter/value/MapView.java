@@ -0,0 +1,95 @@
+package interpreter.value;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Chaves ou valores de um mapa, lidos direto do mapa sem copiar. Antes de o
+// mapa ser alterado a visao copia o conteudo atual (detach), entao ela
+// sempre mostra o mapa como ele era quando a visao foi criada. A ordem e a
+// da copia que keys() e values() faziam antes (PackedMap.copyOrder).
+public class MapView extends AbstractList<Value<?>> implements Versioned {
+
+    private final PackedMap map;
+    private final boolean keys;
+    private Value<?>[] snapshot;
+
+    MapView(PackedMap map, boolean keys) {
+        this.map = map;
+        this.keys = keys;
+        this.snapshot = null;
+    }
+
+    // Copia o conteudo atual.
+    synchronized void detach() {
+        if (this.snapshot != null)
+            return;
+
+        Value<?>[] a = new Value<?>[this.map.size()];
+        int i = 0;
+        for (Map.Entry<Value<?>, Value<?>> e : this.map.copyOrder())
+            a[i++] = this.keys ? e.getKey() : e.getValue();
+
+        this.snapshot = a;
+    }
+
+    private Collection<Value<?>> live() {
+        return this.keys ? this.map.keySet() : this.map.values();
+    }
+
+    @Override
+    public int version() {
+        return 0;
+    }
+
+    @Override
+    public int size() {
+        return this.snapshot != null ? this.snapshot.length : this.map.size();
+    }
+
+    // Acesso por indice precisa da copia (por isso a visao nao e
+    // RandomAccess).
+    @Override
+    public Value<?> get(int index) {
+        detach();
+        if (index < 0 || index >= this.snapshot.length)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.snapshot.length);
+
+        return this.snapshot[index];
+    }
+
+    @Override
+    public Iterator<Value<?>> iterator() {
+        // Se a ordem do mapa nao e a da copia, le da copia desde o inicio.
+        if (this.snapshot == null && !this.map.iteratesAsCopy())
+            detach();
+
+        return new Iterator<Value<?>>() {
+            private final Iterator<Value<?>> it = snapshot == null ? live().iterator() : null;
+            private final int size = size();
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < this.size;
+            }
+
+            @Override
+            public Value<?> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                // Se o mapa foi alterado no meio do caminho, continua pela
+                // copia, que tem a mesma ordem.
+                if (snapshot != null)
+                    return snapshot[this.next++];
+
+                this.next++;
+                return this.it.next();
+            }
+        };
+    }
+
+}
@@ -2,9 +2,9 @@ package interpreter.value;
 
 public class NumberValue extends Value<Integer> {
 
-    private Integer value;
+    private int value;
 
-    public NumberValue(Integer value) {
+    public NumberValue(int value) {
         this.value = value;
     }
 
@@ -13,9 +13,13 @@ public class NumberValue extends Value<Integer> {
         return this.value;
     }
 
+    public int intValue() {
+        return this.value;
+    }
+
     @Override
     public int hashCode() {
-        return this.value.hashCode();
+        return Integer.hashCode(this.value);
     }
 
     @Override
@@ -23,7 +27,7 @@ public class NumberValue extends Value<Integer> {
         if (this == obj) {
             return true;
         } else if (obj instanceof NumberValue) {
-            return this.value.intValue() == ((NumberValue) obj).value.intValue();
+            return this.value == ((NumberValue) obj).value;
         } else {
             return false;
         }
@@ -31,7 +35,7 @@ public class NumberValue extends Value<Integer> {
 
     @Override
     public String toString() {
-        return this.value.toString();
+        return Integer.toString(this.value);
     }
 
 }
@@ -0,0 +1,124 @@
+package interpreter.value;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+// Array de int fora do heap, num ByteBuffer direto. A memoria e liberada
+// pelo Cleaner assim que este objeto deixa de ser alcancavel, sem esperar
+// o GC descobrir o ByteBuffer.
+class OffHeapInts {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            // Sem Unsafe a memoria e liberada quando o GC coletar o buffer.
+            unsafe = null;
+            invokeCleaner = null;
+        }
+
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private static class Free implements Runnable {
+
+        private ByteBuffer buffer;
+
+        Free(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void run() {
+            if (INVOKE_CLEANER != null) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, this.buffer);
+                } catch (Exception e) {
+                    // O buffer continua sendo liberado pelo proprio GC.
+                }
+            }
+
+            this.buffer = null;
+        }
+
+    }
+
+    private final ByteBuffer buffer;
+    private final IntBuffer ints;
+    private final int capacity;
+
+    OffHeapInts(int capacity) {
+        if (capacity > Integer.MAX_VALUE / Integer.BYTES)
+            throw new OutOfMemoryError("Lista grande demais: " + capacity);
+
+        this.buffer = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder());
+        this.ints = this.buffer.asIntBuffer();
+        this.capacity = capacity;
+        CLEANER.register(this, new Free(this.buffer));
+    }
+
+    int capacity() {
+        return this.capacity;
+    }
+
+    int get(int index) {
+        try {
+            return this.ints.get(index);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    void set(int index, int value) {
+        try {
+            this.ints.put(index, value);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    // Copia len ints de src (a partir de srcPos) para esta posicao.
+    void put(int index, int[] src, int srcPos, int len) {
+        try {
+            this.ints.duplicate().position(index).put(src, srcPos, len);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    void put(int index, OffHeapInts src, int srcPos, int len) {
+        try {
+            IntBuffer from = src.ints.duplicate();
+            from.position(srcPos).limit(srcPos + len);
+            this.ints.duplicate().position(index).put(from);
+        } finally {
+            Reference.reachabilityFence(this);
+            Reference.reachabilityFence(src);
+        }
+    }
+
+    void get(int index, int[] dst, int dstPos, int len) {
+        try {
+            this.ints.duplicate().position(index).get(dst, dstPos, len);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+}
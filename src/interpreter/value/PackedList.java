@@ -0,0 +1,433 @@
+package interpreter.value;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+// Lista que guarda os elementos num int[] enquanto todos forem numeros e
+// passa para a representacao com Value<?> na primeira vez que recebe outro tipo.
+// Listas numericas com capacidade acima de offHeapThreshold ficam fora do heap.
+//
+// Depois de um fork() as duas listas compartilham os mesmos arrays: a lista
+// que termina onde os arrays terminam ainda pode acrescentar no final sem
+// copiar, e qualquer outra alteracao copia os arrays antes (copy-on-write).
+public class PackedList extends AbstractList<Value<?>> implements RandomAccess, Versioned {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private static volatile int offHeapThreshold = 8 * 1024 * 1024;
+
+    // Exatamente um entre ints, direct e values e diferente de null.
+    private static class Store {
+        int[] ints;
+        OffHeapInts direct;
+        Value<?>[] values;
+        int used;
+
+        Store(int capacity) {
+            this.used = 0;
+            if (capacity > offHeapThreshold)
+                this.direct = new OffHeapInts(capacity);
+            else
+                this.ints = new int[Math.max(capacity, 0)];
+        }
+
+        boolean packed() {
+            return this.values == null;
+        }
+
+        int capacity() {
+            if (this.ints != null)
+                return this.ints.length;
+            if (this.direct != null)
+                return this.direct.capacity();
+
+            return this.values.length;
+        }
+
+        int getInt(int index) {
+            return this.ints != null ? this.ints[index] : this.direct.get(index);
+        }
+
+        void setInt(int index, int n) {
+            if (this.ints != null)
+                this.ints[index] = n;
+            else
+                this.direct.set(index, n);
+        }
+
+        // Copia os primeiros size elementos para arrays com a capacidade dada.
+        Store copy(int size, int capacity) {
+            Store s = new Store(this.packed() ? capacity : 0);
+            if (this.ints != null && s.ints != null) {
+                System.arraycopy(this.ints, 0, s.ints, 0, size);
+            } else if (this.ints != null) {
+                s.direct.put(0, this.ints, 0, size);
+            } else if (this.direct != null && s.ints != null) {
+                this.direct.get(0, s.ints, 0, size);
+            } else if (this.direct != null) {
+                s.direct.put(0, this.direct, 0, size);
+            } else {
+                s.ints = null;
+                s.values = Arrays.copyOf(this.values, capacity);
+                Arrays.fill(s.values, size, capacity, null);
+            }
+
+            return s;
+        }
+
+        void grow(int size, int capacity) {
+            Store s = copy(size, capacity);
+            this.ints = s.ints;
+            this.direct = s.direct;
+            this.values = s.values;
+        }
+
+        void generalize(int size) {
+            Value<?>[] vs = new Value<?>[capacity()];
+            for (int i = 0; i < size; i++)
+                vs[i] = new NumberValue(getInt(i));
+
+            this.values = vs;
+            this.ints = null;
+            this.direct = null;
+        }
+
+        // Move len elementos de from para to dentro dos proprios arrays.
+        void move(int from, int to, int len) {
+            if (this.ints != null) {
+                System.arraycopy(this.ints, from, this.ints, to, len);
+            } else if (this.values != null) {
+                System.arraycopy(this.values, from, this.values, to, len);
+            } else if (from < to) {
+                for (int i = len - 1; i >= 0; i--)
+                    this.direct.set(to + i, this.direct.get(from + i));
+            } else {
+                for (int i = 0; i < len; i++)
+                    this.direct.set(to + i, this.direct.get(from + i));
+            }
+        }
+
+        // Copia os primeiros n elementos de from para a posicao at.
+        void copyFrom(Store from, int n, int at) {
+            if (this.values != null) {
+                if (from.values != null) {
+                    System.arraycopy(from.values, 0, this.values, at, n);
+                } else {
+                    for (int i = 0; i < n; i++)
+                        this.values[at + i] = new NumberValue(from.getInt(i));
+                }
+            } else if (this.ints != null && from.ints != null) {
+                System.arraycopy(from.ints, 0, this.ints, at, n);
+            } else if (this.ints != null) {
+                from.direct.get(0, this.ints, at, n);
+            } else if (from.ints != null) {
+                this.direct.put(at, from.ints, 0, n);
+            } else {
+                this.direct.put(at, from.direct, 0, n);
+            }
+        }
+    }
+
+    private Store store;
+    private int size;
+    private boolean shared;
+    private int version;
+
+    public PackedList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PackedList(int capacity) {
+        this.store = new Store(capacity);
+        this.size = 0;
+        this.shared = false;
+    }
+
+    public PackedList(Collection<? extends Value<?>> c) {
+        this(c.size());
+        this.addAll(c);
+    }
+
+    private PackedList(Store store, int size) {
+        this.store = store;
+        this.size = size;
+        this.shared = true;
+    }
+
+    // Capacidade a partir da qual listas numericas sao guardadas fora do heap.
+    public static void setOffHeapThreshold(int threshold) {
+        offHeapThreshold = threshold;
+    }
+
+    // Nova lista com o mesmo conteudo, compartilhando os arrays desta.
+    public PackedList fork() {
+        synchronized (this.store) {
+            if (!this.shared) {
+                this.store.used = this.size;
+                this.shared = true;
+            }
+        }
+
+        return new PackedList(this.store, this.size);
+    }
+
+    @Override
+    public int version() {
+        return this.version;
+    }
+
+    public boolean isPacked() {
+        return this.store.packed();
+    }
+
+    public boolean isOffHeap() {
+        return this.store.direct != null;
+    }
+
+    public int getInt(int index) {
+        checkIndex(index);
+        return this.store.getInt(index);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Value<?> get(int index) {
+        checkIndex(index);
+        Store s = this.store;
+        if (s.values == null)
+            return new NumberValue(s.getInt(index));
+
+        return s.values[index];
+    }
+
+    @Override
+    public Value<?> set(int index, Value<?> v) {
+        checkIndex(index);
+        if (this.shared)
+            own(this.size);
+
+        this.version++;
+        Store s = this.store;
+        if (s.packed()) {
+            int old = s.getInt(index);
+            if (v instanceof NumberValue) {
+                s.setInt(index, ((NumberValue) v).intValue());
+                return new NumberValue(old);
+            }
+
+            s.generalize(this.size);
+        }
+
+        Value<?> old = s.values[index];
+        s.values[index] = v;
+        return old;
+    }
+
+    @Override
+    public void add(int index, Value<?> v) {
+        if (index < 0 || index > this.size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+
+        if (this.shared) {
+            if (appendShared(index, v))
+                return;
+
+            own(this.size + 1);
+        }
+
+        if (this.store.packed() && !(v instanceof NumberValue))
+            this.store.generalize(this.size);
+
+        ensureCapacity(this.size + 1);
+        Store s = this.store;
+        s.move(index, index + 1, this.size - index);
+        if (s.packed())
+            s.setInt(index, ((NumberValue) v).intValue());
+        else
+            s.values[index] = v;
+
+        this.size++;
+        this.modCount++;
+        this.version++;
+    }
+
+    // Acrescenta no final de arrays compartilhados, se esta lista termina
+    // onde eles terminam e o valor cabe na representacao atual.
+    private boolean appendShared(int index, Value<?> v) {
+        if (index != this.size)
+            return false;
+
+        synchronized (this.store) {
+            Store s = this.store;
+            if (s.used != this.size || (s.packed() && !(v instanceof NumberValue)))
+                return false;
+
+            ensureCapacity(this.size + 1);
+            if (s.packed())
+                s.setInt(this.size, ((NumberValue) v).intValue());
+            else
+                s.values[this.size] = v;
+
+            this.size++;
+            s.used = this.size;
+            this.modCount++;
+            this.version++;
+            return true;
+        }
+    }
+
+    @Override
+    public Value<?> remove(int index) {
+        Value<?> old = get(index);
+        if (this.shared)
+            own(this.size);
+
+        Store s = this.store;
+        s.move(index + 1, index, this.size - index - 1);
+        if (!s.packed())
+            s.values[this.size - 1] = null;
+
+        this.size--;
+        this.modCount++;
+        this.version++;
+        return old;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        Store s = this.store;
+        if (!s.packed()) {
+            for (int i = 0; i < this.size; i++) {
+                if (Objects.equals(o, s.values[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        if (!(o instanceof NumberValue))
+            return -1;
+
+        int n = ((NumberValue) o).intValue();
+        for (int i = 0; i < this.size; i++) {
+            if (s.getInt(i) == n)
+                return i;
+        }
+
+        return -1;
+    }
+
+    // Com c == null a lista deve conter so numeros, ordenados pelo valor.
+    @Override
+    public void sort(Comparator<? super Value<?>> c) {
+        if (this.shared)
+            own(this.size);
+
+        Store s = this.store;
+        if (s.packed() && c == null) {
+            if (s.ints != null) {
+                Arrays.sort(s.ints, 0, this.size);
+            } else {
+                int[] tmp = new int[this.size];
+                s.direct.get(0, tmp, 0, this.size);
+                Arrays.sort(tmp);
+                s.direct.put(0, tmp, 0, this.size);
+            }
+        } else {
+            if (s.packed())
+                s.generalize(this.size);
+
+            Arrays.sort(s.values, 0, this.size, c);
+        }
+
+        this.modCount++;
+        this.version++;
+    }
+
+    @Override
+    public void clear() {
+        if (this.shared || this.store.direct != null) {
+            this.store = new Store(DEFAULT_CAPACITY);
+            this.shared = false;
+        } else if (this.store.values != null) {
+            Arrays.fill(this.store.values, 0, this.size, null);
+        }
+
+        this.size = 0;
+        this.modCount++;
+        this.version++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Value<?>> c) {
+        if (!(c instanceof PackedList)) {
+            boolean changed = false;
+            for (Value<?> v : c)
+                changed |= add(v);
+
+            return changed;
+        }
+
+        PackedList other = (PackedList) c;
+        Store from = other.store;
+        int n = other.size;
+        if (n == 0)
+            return false;
+
+        if (this.shared) {
+            synchronized (this.store) {
+                Store s = this.store;
+                if (s.used == this.size && (!s.packed() || from.packed())) {
+                    copyFrom(from, n);
+                    s.used = this.size;
+                    return true;
+                }
+            }
+
+            own(this.size + n);
+        }
+
+        if (this.store.packed() && !from.packed())
+            this.store.generalize(this.size);
+
+        copyFrom(from, n);
+        return true;
+    }
+
+    private void copyFrom(Store from, int n) {
+        ensureCapacity(this.size + n);
+        this.store.copyFrom(from, n, this.size);
+        this.size += n;
+        this.modCount++;
+        this.version++;
+    }
+
+    // Passa a ter arrays proprios, copiando os elementos desta lista.
+    private void own(int capacity) {
+        this.store = this.store.copy(this.size, Math.max(capacity, this.size));
+        this.shared = false;
+    }
+
+    private void ensureCapacity(int min) {
+        Store s = this.store;
+        int capacity = s.capacity();
+        if (min <= capacity)
+            return;
+
+        long n = Math.max(min, capacity + (capacity >> 1) + 1L);
+        s.grow(this.size, (int) Math.min(n, Integer.MAX_VALUE - 8));
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+
+}
@@ -0,0 +1,770 @@
+package interpreter.value;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Mapa pequeno (ate SMALL_SIZE entradas) guardado como pares chave/valor num
+// unico array, procurados em sequencia. Ao crescer passa a usar enderecamento
+// aberto com chaves int enquanto todas as chaves forem numeros; com chaves
+// de outro tipo passa a usar um HashMap.
+//
+// Antes os mapas eram HashMaps, e print, keys() e values() mostram as
+// entradas na ordem em que um HashMap as percorreria: por balde e, no mesmo
+// balde, por ordem de insercao. hashCapacity acompanha o numero de baldes
+// que esse HashMap teria, e toda representacao e percorrida nessa ordem.
+public class PackedMap extends AbstractMap<Value<?>, Value<?>> implements Versioned {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // A partir deste tamanho fork() passa a compartilhar um PersistentMap
+    // em vez de copiar o mapa inteiro.
+    private static final int SHARE_THRESHOLD = 16;
+
+    private static final int SMALL_SIZE = 8;
+
+    // Pares k0, v0, k1, v1, ... enquanto o mapa for pequeno, ordenados pelo
+    // balde da chave.
+    private Value<?>[] entries;
+
+    private int[] keys;
+    private Value<?>[] values;
+    private boolean[] used;
+    // Ordem de insercao de cada posicao da tabela.
+    private int[] seq;
+    private int nextSeq;
+    private int size;
+    private int version;
+
+    // Baldes do HashMap equivalente; 0 enquanto ele ainda nao teria tabela.
+    private int hashCapacity;
+
+    // Posicoes da tabela na ordem do HashMap; null depois que as chaves
+    // mudam.
+    private volatile int[] order;
+
+    private Map<Value<?>, Value<?>> general;
+
+    // Visoes devolvidas por keys() e values() que ainda leem deste mapa.
+    private WeakReference<MapView> keyView;
+    private WeakReference<MapView> valueView;
+
+    public PackedMap() {
+        this(0);
+    }
+
+    public PackedMap(int expected) {
+        this.size = 0;
+        this.general = null;
+        if (expected <= SMALL_SIZE) {
+            this.entries = new Value<?>[2 * Math.max(expected, 2)];
+            return;
+        }
+
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expected * 2)
+            capacity <<= 1;
+
+        allocate(capacity);
+    }
+
+    private PackedMap(Map<Value<?>, Value<?>> general, int hashCapacity) {
+        this.general = general;
+        this.hashCapacity = hashCapacity;
+    }
+
+    // Novo mapa com o mesmo conteudo, percorrido como o HashMap que recebia
+    // putAll deste em map + map. Mapas grandes passam a ser guardados num
+    // PersistentMap, cujos nos sao compartilhados pelas duas copias.
+    public PackedMap fork() {
+        int capacity = copyCapacity(this.size());
+        if (this.general instanceof PersistentMap)
+            return new PackedMap(((PersistentMap) this.general).fork(), capacity);
+
+        if (this.size() >= SHARE_THRESHOLD)
+            return new PackedMap(new PersistentMap(this), capacity);
+
+        if (this.entries != null) {
+            PackedMap m = new PackedMap(0);
+            m.entries = this.entries.clone();
+            m.size = this.size;
+            m.hashCapacity = capacity;
+            m.sortSmall();
+            return m;
+        }
+
+        if (this.keys != null) {
+            PackedMap m = new PackedMap(0);
+            m.entries = null;
+            m.keys = this.keys.clone();
+            m.values = this.values.clone();
+            m.used = this.used.clone();
+            m.seq = new int[this.seq.length];
+
+            // A copia recebe as chaves na ordem em que este mapa as percorre.
+            int[] o = order();
+            for (int i = 0; i < o.length; i++)
+                m.seq[o[i]] = i;
+
+            m.nextSeq = o.length;
+            m.size = this.size;
+            m.hashCapacity = capacity;
+            return m;
+        }
+
+        PackedMap m = new PackedMap(this.size());
+        m.putAll(this);
+        return m;
+    }
+
+    @Override
+    public int version() {
+        return this.version;
+    }
+
+    // Visao das chaves sem copia; a mesma enquanto o mapa nao mudar.
+    // Sincronizado: compreensoes paralelas chamam keys() do mesmo mapa em
+    // varias threads, e uma visao criada sem ficar registrada nunca seria
+    // desligada do mapa.
+    public synchronized MapView keyView() {
+        MapView v = this.keyView != null ? this.keyView.get() : null;
+        if (v == null) {
+            v = new MapView(this, true);
+            this.keyView = new WeakReference<MapView>(v);
+        }
+
+        return v;
+    }
+
+    public synchronized MapView valueView() {
+        MapView v = this.valueView != null ? this.valueView.get() : null;
+        if (v == null) {
+            v = new MapView(this, false);
+            this.valueView = new WeakReference<MapView>(v);
+        }
+
+        return v;
+    }
+
+    // Chamado antes de qualquer alteracao: as visoes vivas copiam o
+    // conteudo atual e deixam de ler deste mapa.
+    private void modified() {
+        this.version++;
+        if (this.keyView != null || this.valueView != null)
+            detachViews();
+    }
+
+    private synchronized void detachViews() {
+        detach(this.keyView);
+        detach(this.valueView);
+        this.keyView = null;
+        this.valueView = null;
+    }
+
+    private static void detach(WeakReference<MapView> ref) {
+        MapView v = ref != null ? ref.get() : null;
+        if (v != null)
+            v.detach();
+    }
+
+    public boolean isPacked() {
+        return this.keys != null;
+    }
+
+    public Value<?> get(int key) {
+        if (this.general != null)
+            return this.general.get(new NumberValue(key));
+
+        if (this.entries != null) {
+            int i = indexOfInt(key);
+            return i < 0 ? null : this.entries[i + 1];
+        }
+
+        int slot = find(key);
+        return slot < 0 ? null : this.values[slot];
+    }
+
+    public Value<?> put(int key, Value<?> value) {
+        modified();
+        if (this.general != null)
+            return putGeneral(new NumberValue(key), value);
+
+        if (this.entries != null) {
+            int i = indexOfInt(key);
+            if (i >= 0)
+                return setSmall(i, value);
+
+            return putSmall(new NumberValue(key), value);
+        }
+
+        int slot = find(key);
+        if (slot >= 0) {
+            Value<?> old = this.values[slot];
+            this.values[slot] = value;
+            return old;
+        }
+
+        if ((this.size + 1) * 2 > this.keys.length)
+            resize(this.keys.length << 1);
+
+        if (this.nextSeq == Integer.MAX_VALUE)
+            renumber();
+
+        table();
+        insert(key, value, this.nextSeq++);
+        this.size++;
+        grown();
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return this.general != null ? this.general.size() : this.size;
+    }
+
+    @Override
+    public Value<?> get(Object key) {
+        if (this.general != null)
+            return this.general.get(key);
+
+        if (this.entries != null) {
+            int i = indexOf(key);
+            return i < 0 ? null : this.entries[i + 1];
+        }
+
+        return key instanceof NumberValue ? get(((NumberValue) key).intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (this.general != null)
+            return this.general.containsKey(key);
+
+        if (this.entries != null)
+            return indexOf(key) >= 0;
+
+        return key instanceof NumberValue && find(((NumberValue) key).intValue()) >= 0;
+    }
+
+    @Override
+    public Value<?> put(Value<?> key, Value<?> value) {
+        modified();
+        if (this.entries != null) {
+            int i = indexOf(key);
+            if (i >= 0)
+                return setSmall(i, value);
+
+            return putSmall(key, value);
+        }
+
+        if (this.general == null && !(key instanceof NumberValue))
+            generalize();
+
+        if (this.general != null)
+            return putGeneral(key, value);
+
+        return put(((NumberValue) key).intValue(), value);
+    }
+
+    private Value<?> putGeneral(Value<?> key, Value<?> value) {
+        Value<?> old = this.general.put(key, value);
+        grown();
+        return old;
+    }
+
+    // Como HashMap.putAll: sem tabela, ela ja nasce com baldes para m; com
+    // tabela, dobra antes enquanto m sozinho passa de 3/4 dos baldes.
+    @Override
+    public void putAll(Map<? extends Value<?>, ? extends Value<?>> m) {
+        int n = m.size();
+        if (n == 0)
+            return;
+
+        modified();
+        int capacity = this.hashCapacity;
+        if (capacity == 0) {
+            capacity = copyCapacity(n);
+        } else {
+            while (n > threshold(capacity))
+                capacity <<= 1;
+        }
+        resized(capacity);
+
+        if (m instanceof PackedMap && ((PackedMap) m).isPacked() && this.isPacked()) {
+            PackedMap other = (PackedMap) m;
+            for (int slot : other.order())
+                put(other.keys[slot], other.values[slot]);
+            return;
+        }
+
+        for (Map.Entry<? extends Value<?>, ? extends Value<?>> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    @Override
+    public Value<?> remove(Object key) {
+        modified();
+        if (this.general != null)
+            return this.general.remove(key);
+
+        if (this.entries != null) {
+            int i = indexOf(key);
+            if (i < 0)
+                return null;
+
+            Value<?> old = this.entries[i + 1];
+            System.arraycopy(this.entries, i + 2, this.entries, i, 2 * this.size - i - 2);
+            this.size--;
+            this.entries[2 * this.size] = null;
+            this.entries[2 * this.size + 1] = null;
+            return old;
+        }
+
+        if (!(key instanceof NumberValue))
+            return null;
+
+        int slot = find(((NumberValue) key).intValue());
+        if (slot < 0)
+            return null;
+
+        Value<?> old = this.values[slot];
+        delete(slot);
+        this.size--;
+        return old;
+    }
+
+    // Como no HashMap, os baldes continuam os mesmos.
+    @Override
+    public void clear() {
+        modified();
+        if (this.general != null) {
+            this.general.clear();
+            return;
+        }
+
+        if (this.entries != null) {
+            Arrays.fill(this.entries, null);
+            this.size = 0;
+            return;
+        }
+
+        Arrays.fill(this.used, false);
+        Arrays.fill(this.values, null);
+        this.size = 0;
+        this.nextSeq = 0;
+        this.order = null;
+    }
+
+    @Override
+    public Set<Map.Entry<Value<?>, Value<?>>> entrySet() {
+        if (this.general instanceof PersistentMap) {
+            final Map<Value<?>, Value<?>> trie = this.general;
+            return new AbstractSet<Map.Entry<Value<?>, Value<?>>>() {
+                @Override
+                public int size() {
+                    return trie.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<Value<?>, Value<?>>> iterator() {
+                    return ((PersistentMap) trie).inOrder(PackedMap.this.hashCapacity).iterator();
+                }
+            };
+        }
+
+        if (this.general != null)
+            return this.general.entrySet();
+
+        return new AbstractSet<Map.Entry<Value<?>, Value<?>>>() {
+            @Override
+            public int size() {
+                return PackedMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<Value<?>, Value<?>>> iterator() {
+                if (PackedMap.this.entries != null)
+                    return new PairIterator();
+
+                return new OrderIterator();
+            }
+        };
+    }
+
+    // Baldes de new HashMap(m) para um m com size entradas, como nas copias
+    // que keys(), values() e map + map faziam.
+    static int copyCapacity(int size) {
+        int t = (int) (size / 0.75f + 1.0f);
+        return t <= 1 ? 1 : Integer.highestOneBit(t - 1) << 1;
+    }
+
+    // keys() e values() percorriam a copia new HashMap(m), com baldes de
+    // copyCapacity: a ordem deste mapa serve quando ele tem os mesmos.
+    boolean iteratesAsCopy() {
+        return this.hashCapacity == copyCapacity(this.size()) || this.size() <= 1;
+    }
+
+    // Entradas na ordem dessa copia: a ordem deste mapa, reordenada de
+    // forma estavel pelos baldes da copia.
+    List<Map.Entry<Value<?>, Value<?>>> copyOrder() {
+        List<Map.Entry<Value<?>, Value<?>>> in = new ArrayList<Map.Entry<Value<?>, Value<?>>>(this.entrySet());
+        int n = in.size();
+        int capacity = copyCapacity(n);
+        int[] buckets = new int[n];
+        int[] start = new int[capacity + 1];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = bucketOf(in.get(i).getKey(), capacity);
+            start[buckets[i] + 1]++;
+        }
+
+        for (int b = 0; b < capacity; b++)
+            start[b + 1] += start[b];
+
+        List<Map.Entry<Value<?>, Value<?>>> out =
+            new ArrayList<Map.Entry<Value<?>, Value<?>>>(Collections.nCopies(n, null));
+        for (int i = 0; i < n; i++)
+            out.set(start[buckets[i]]++, in.get(i));
+
+        return out;
+    }
+
+    private static int threshold(int capacity) {
+        return (int) (capacity * 0.75f);
+    }
+
+    // Balde da chave num HashMap com capacity baldes.
+    static int bucketOf(Value<?> key, int capacity) {
+        int h = key == null ? 0 : key.hashCode();
+        return (h ^ (h >>> 16)) & (capacity - 1);
+    }
+
+    // O HashMap equivalente cria a tabela no primeiro put.
+    private void table() {
+        if (this.hashCapacity == 0)
+            resized(DEFAULT_CAPACITY);
+    }
+
+    // Depois de uma insercao: o HashMap dobra ao passar de 3/4 dos baldes.
+    private void grown() {
+        if (size() > threshold(this.hashCapacity))
+            resized(this.hashCapacity << 1);
+    }
+
+    private void resized(int capacity) {
+        if (capacity == this.hashCapacity)
+            return;
+
+        this.hashCapacity = capacity;
+        if (this.entries != null)
+            sortSmall();
+        else
+            this.order = null;
+    }
+
+    // Posicao da chave em entries. Chaves de texto vindas de literais sao
+    // internadas, entao a comparacao por identidade costuma bastar.
+    private int indexOf(Object key) {
+        Value<?>[] es = this.entries;
+        int n = 2 * this.size;
+        for (int i = 0; i < n; i += 2) {
+            if (es[i] == key)
+                return i;
+        }
+
+        if (key != null) {
+            for (int i = 0; i < n; i += 2) {
+                if (key.equals(es[i]))
+                    return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int indexOfInt(int key) {
+        Value<?>[] es = this.entries;
+        int n = 2 * this.size;
+        for (int i = 0; i < n; i += 2) {
+            if (es[i] instanceof NumberValue && ((NumberValue) es[i]).intValue() == key)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private Value<?> setSmall(int i, Value<?> value) {
+        Value<?> old = this.entries[i + 1];
+        this.entries[i + 1] = value;
+        return old;
+    }
+
+    private Value<?> putSmall(Value<?> key, Value<?> value) {
+        if (this.size == SMALL_SIZE) {
+            upgrade();
+            return this.put(key, value);
+        }
+
+        int n = 2 * this.size;
+        if (n == this.entries.length)
+            this.entries = Arrays.copyOf(this.entries, Math.min(2 * n, 2 * SMALL_SIZE));
+
+        // Entra depois das chaves do mesmo balde ou de baldes anteriores.
+        table();
+        int b = bucketOf(key, this.hashCapacity);
+        int i = n;
+        while (i > 0 && bucketOf(this.entries[i - 2], this.hashCapacity) > b)
+            i -= 2;
+
+        System.arraycopy(this.entries, i, this.entries, i + 2, n - i);
+        this.entries[i] = key;
+        this.entries[i + 1] = value;
+        this.size++;
+        grown();
+        return null;
+    }
+
+    // Reordena os pares pelo balde, sem mudar a ordem dentro de um balde.
+    private void sortSmall() {
+        Value<?>[] es = this.entries;
+        for (int i = 2; i < 2 * this.size; i += 2) {
+            Value<?> k = es[i];
+            Value<?> v = es[i + 1];
+            int b = bucketOf(k, this.hashCapacity);
+            int j = i;
+            while (j > 0 && bucketOf(es[j - 2], this.hashCapacity) > b) {
+                es[j] = es[j - 2];
+                es[j + 1] = es[j - 1];
+                j -= 2;
+            }
+
+            es[j] = k;
+            es[j + 1] = v;
+        }
+    }
+
+    // Sai da representacao pequena: chaves int se todas forem numeros,
+    // HashMap caso contrario. A ordem dos pares vira a ordem de insercao.
+    private void upgrade() {
+        Value<?>[] es = this.entries;
+        int n = 2 * this.size;
+
+        boolean numbers = true;
+        for (int i = 0; i < n && numbers; i += 2)
+            numbers = es[i] instanceof NumberValue;
+
+        this.entries = null;
+        if (numbers) {
+            allocate(4 * SMALL_SIZE);
+            for (int i = 0; i < n; i += 2)
+                insert(((NumberValue) es[i]).intValue(), es[i + 1], i / 2);
+            this.nextSeq = n / 2;
+        } else {
+            Map<Value<?>, Value<?>> m = new HashMap<Value<?>, Value<?>>(this.hashCapacity);
+            for (int i = 0; i < n; i += 2)
+                m.put(es[i], es[i + 1]);
+
+            this.general = m;
+            this.size = 0;
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new Value<?>[capacity];
+        this.used = new boolean[capacity];
+        this.seq = new int[capacity];
+    }
+
+    private static int slotOf(int key, int mask) {
+        return (key ^ (key >>> 16)) & mask;
+    }
+
+    private int find(int key) {
+        int mask = this.keys.length - 1;
+        for (int i = slotOf(key, mask); this.used[i]; i = (i + 1) & mask) {
+            if (this.keys[i] == key)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private void insert(int key, Value<?> value, int seq) {
+        int mask = this.keys.length - 1;
+        int i = slotOf(key, mask);
+        while (this.used[i])
+            i = (i + 1) & mask;
+
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.used[i] = true;
+        this.seq[i] = seq;
+        this.order = null;
+    }
+
+    private void delete(int slot) {
+        int mask = this.keys.length - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; this.used[i]; i = (i + 1) & mask) {
+            int home = slotOf(this.keys[i], mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                this.keys[hole] = this.keys[i];
+                this.values[hole] = this.values[i];
+                this.seq[hole] = this.seq[i];
+                hole = i;
+            }
+        }
+
+        this.used[hole] = false;
+        this.values[hole] = null;
+        this.order = null;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = this.keys;
+        Value<?>[] oldValues = this.values;
+        boolean[] oldUsed = this.used;
+        int[] oldSeq = this.seq;
+
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i])
+                insert(oldKeys[i], oldValues[i], oldSeq[i]);
+        }
+    }
+
+    // Posicoes ocupadas, ordenadas pela ordem de insercao (cada long e
+    // seq << 32 | posicao).
+    private long[] bySeq() {
+        long[] a = new long[this.size];
+        int n = 0;
+        for (int i = 0; i < this.used.length; i++) {
+            if (this.used[i])
+                a[n++] = ((long) this.seq[i] << 32) | i;
+        }
+
+        Arrays.sort(a);
+        return a;
+    }
+
+    // As ordens de insercao voltam a ser 0, 1, 2, ... na mesma sequencia.
+    private void renumber() {
+        long[] a = bySeq();
+        for (int i = 0; i < a.length; i++)
+            this.seq[(int) a[i]] = i;
+
+        this.nextSeq = a.length;
+    }
+
+    // Posicoes ocupadas por balde do HashMap equivalente e, no mesmo balde,
+    // por ordem de insercao. Guardada ate as chaves mudarem.
+    private int[] order() {
+        int[] o = this.order;
+        if (o != null)
+            return o;
+
+        long[] a = bySeq();
+        o = new int[a.length];
+        if (a.length > 0) {
+            int mask = this.hashCapacity - 1;
+            int[] start = new int[this.hashCapacity + 1];
+            for (long e : a)
+                start[slotOf(this.keys[(int) e], mask) + 1]++;
+
+            for (int b = 0; b < this.hashCapacity; b++)
+                start[b + 1] += start[b];
+
+            for (long e : a)
+                o[start[slotOf(this.keys[(int) e], mask)]++] = (int) e;
+        }
+
+        this.order = o;
+        return o;
+    }
+
+    private void generalize() {
+        table();
+        Map<Value<?>, Value<?>> m = new HashMap<Value<?>, Value<?>>(this.hashCapacity);
+        for (int slot : order())
+            m.put(new NumberValue(this.keys[slot]), this.values[slot]);
+
+        this.general = m;
+        this.keys = null;
+        this.values = null;
+        this.used = null;
+        this.seq = null;
+        this.order = null;
+        this.size = 0;
+    }
+
+    private class PairIterator implements Iterator<Map.Entry<Value<?>, Value<?>>> {
+
+        private final Value<?>[] es = entries;
+        private final int end = 2 * size;
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+            return this.next < this.end;
+        }
+
+        @Override
+        public Map.Entry<Value<?>, Value<?>> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            final int i = this.next;
+            this.next += 2;
+
+            final Value<?>[] es = this.es;
+            return new AbstractMap.SimpleEntry<Value<?>, Value<?>>(es[i], es[i + 1]) {
+                @Override
+                public Value<?> setValue(Value<?> value) {
+                    modified();
+                    es[i + 1] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+    }
+
+    private class OrderIterator implements Iterator<Map.Entry<Value<?>, Value<?>>> {
+
+        private final int[] ks = keys;
+        private final Value<?>[] vs = values;
+        private final int[] slots = order();
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+            return this.next < this.slots.length;
+        }
+
+        @Override
+        public Map.Entry<Value<?>, Value<?>> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            final int slot = this.slots[this.next++];
+            final Value<?>[] vs = this.vs;
+            return new AbstractMap.SimpleEntry<Value<?>, Value<?>>(new NumberValue(this.ks[slot]), vs[slot]) {
+                @Override
+                public Value<?> setValue(Value<?> value) {
+                    modified();
+                    vs[slot] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+    }
+
+}
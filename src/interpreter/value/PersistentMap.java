@@ -0,0 +1,522 @@
+package interpreter.value;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Hash trie (HAMT) cujos nos podem ser compartilhados entre varios mapas.
+// Cada mapa so altera no lugar os nos que ele mesmo criou desde o ultimo
+// fork(); os demais sao copiados no caminho ate a raiz. Cada chave guarda
+// tambem a ordem em que foi inserida, usada por inOrder().
+public class PersistentMap extends AbstractMap<Value<?>, Value<?>> {
+
+    private Node root;
+    private int size;
+    private int next;
+    private Object owner;
+
+    public PersistentMap() {
+        this(BitmapNode.EMPTY, 0, 0);
+    }
+
+    public PersistentMap(Map<? extends Value<?>, ? extends Value<?>> m) {
+        this();
+        this.putAll(m);
+    }
+
+    private PersistentMap(Node root, int size, int next) {
+        this.root = root;
+        this.size = size;
+        this.next = next;
+        this.owner = new Object();
+    }
+
+    // Novo mapa com o mesmo conteudo, compartilhando todos os nos.
+    public PersistentMap fork() {
+        this.owner = new Object();
+        return new PersistentMap(this.root, this.size, this.next);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Value<?> get(Object key) {
+        if (key == null)
+            return null;
+
+        return this.root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null)
+            return false;
+
+        return this.root.contains(0, hash(key), key);
+    }
+
+    @Override
+    public Value<?> put(Value<?> key, Value<?> value) {
+        if (key == null)
+            throw new NullPointerException();
+
+        if (this.next == Integer.MAX_VALUE)
+            renumber();
+
+        Result r = new Result();
+        this.root = this.root.put(this.owner, 0, hash(key), key, value, this.next, r);
+        if (r.added) {
+            this.size++;
+            this.next++;
+        }
+
+        return r.old;
+    }
+
+    @Override
+    public Value<?> remove(Object key) {
+        if (key == null)
+            return null;
+
+        Result r = new Result();
+        Node n = this.root.remove(0, hash(key), key, r);
+        if (r.removed) {
+            this.root = n == null ? BitmapNode.EMPTY : n;
+            this.size--;
+        }
+
+        return r.old;
+    }
+
+    @Override
+    public void clear() {
+        this.root = BitmapNode.EMPTY;
+        this.size = 0;
+        this.next = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<Value<?>, Value<?>>> entrySet() {
+        return new AbstractSet<Map.Entry<Value<?>, Value<?>>>() {
+            @Override
+            public int size() {
+                return PersistentMap.this.size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<Value<?>, Value<?>>> iterator() {
+                return new TrieIterator(PersistentMap.this.root);
+            }
+        };
+    }
+
+    // Entradas na ordem em que um HashMap com capacity baldes as percorreria
+    // se as tivesse recebido na ordem de insercao: por balde e, no mesmo
+    // balde, pela ordem de insercao.
+    public List<Map.Entry<Value<?>, Value<?>>> inOrder(int capacity) {
+        Object[] leaves = new Object[3 * this.size];
+        collect(this.root.array(), leaves, 0);
+
+        int n = this.size;
+        long[] bySeq = new long[n];
+        int[] buckets = new int[n];
+        int[] start = new int[capacity + 1];
+        for (int i = 0; i < n; i++) {
+            bySeq[i] = ((long) (Integer) leaves[3 * i + 2] << 32) | i;
+            buckets[i] = hash(leaves[3 * i]) & (capacity - 1);
+            start[buckets[i] + 1]++;
+        }
+
+        Arrays.sort(bySeq);
+        for (int b = 0; b < capacity; b++)
+            start[b + 1] += start[b];
+
+        List<Map.Entry<Value<?>, Value<?>>> out =
+            new ArrayList<Map.Entry<Value<?>, Value<?>>>(Collections.nCopies(n, null));
+        for (long e : bySeq) {
+            int i = (int) e;
+            out.set(start[buckets[i]]++, new AbstractMap.SimpleImmutableEntry<Value<?>, Value<?>>(
+                (Value<?>) leaves[3 * i], (Value<?>) leaves[3 * i + 1]));
+        }
+
+        return out;
+    }
+
+    // Copia as triplas chave/valor/ordem das folhas para leaves a partir
+    // de from; devolve a posicao seguinte.
+    private static int collect(Object[] a, Object[] leaves, int from) {
+        for (int i = 0; i < a.length; i += 3) {
+            if (a[i] == null) {
+                from = collect(((Node) a[i + 1]).array(), leaves, from);
+            } else {
+                System.arraycopy(a, i, leaves, from, 3);
+                from += 3;
+            }
+        }
+
+        return from;
+    }
+
+    // As ordens de insercao voltam a comecar do zero, na mesma sequencia.
+    private void renumber() {
+        List<Map.Entry<Value<?>, Value<?>>> es = inOrder(1);
+        this.root = BitmapNode.EMPTY;
+        this.size = 0;
+        this.next = 0;
+        this.owner = new Object();
+        for (Map.Entry<Value<?>, Value<?>> e : es)
+            put(e.getKey(), e.getValue());
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private static class Result {
+        boolean added;
+        boolean removed;
+        Value<?> old;
+    }
+
+    private abstract static class Node {
+
+        final Object owner;
+
+        Node(Object owner) {
+            this.owner = owner;
+        }
+
+        abstract Value<?> find(int shift, int hash, Object key);
+
+        abstract boolean contains(int shift, int hash, Object key);
+
+        abstract Node put(Object owner, int shift, int hash, Value<?> key, Value<?> value, int seq, Result r);
+
+        abstract Node remove(int shift, int hash, Object key, Result r);
+
+        // Triplas chave/valor/ordem de insercao; chave null indica que o
+        // valor e um no filho.
+        abstract Object[] array();
+
+    }
+
+    private static class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+        int bitmap;
+        Object[] array;
+
+        BitmapNode(Object owner, int bitmap, Object[] array) {
+            super(owner);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object[] array() {
+            return this.array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        @Override
+        Value<?> find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0)
+                return null;
+
+            int i = 3 * index(bit);
+            Object k = this.array[i];
+            if (k == null)
+                return ((Node) this.array[i + 1]).find(shift + 5, hash, key);
+
+            return key.equals(k) ? (Value<?>) this.array[i + 1] : null;
+        }
+
+        @Override
+        boolean contains(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0)
+                return false;
+
+            int i = 3 * index(bit);
+            Object k = this.array[i];
+            if (k == null)
+                return ((Node) this.array[i + 1]).contains(shift + 5, hash, key);
+
+            return key.equals(k);
+        }
+
+        private BitmapNode editable(Object owner) {
+            if (owner != null && this.owner == owner)
+                return this;
+
+            return new BitmapNode(owner, this.bitmap, this.array.clone());
+        }
+
+        @Override
+        Node put(Object owner, int shift, int hash, Value<?> key, Value<?> value, int seq, Result r) {
+            int bit = bit(hash, shift);
+            int i = 3 * index(bit);
+
+            if ((this.bitmap & bit) != 0) {
+                Object k = this.array[i];
+                Object v = this.array[i + 1];
+
+                if (k == null) {
+                    Node child = ((Node) v).put(owner, shift + 5, hash, key, value, seq, r);
+                    if (child == v)
+                        return this;
+
+                    BitmapNode n = editable(owner);
+                    n.array[i + 1] = child;
+                    return n;
+                }
+
+                if (key.equals(k)) {
+                    r.old = (Value<?>) v;
+                    if (v == value)
+                        return this;
+
+                    BitmapNode n = editable(owner);
+                    n.array[i + 1] = value;
+                    return n;
+                }
+
+                r.added = true;
+                BitmapNode n = editable(owner);
+                n.array[i] = null;
+                n.array[i + 1] = merge(owner, shift + 5, (Value<?>) k, (Value<?>) v,
+                    (Integer) this.array[i + 2], hash, key, value, seq);
+                n.array[i + 2] = null;
+                return n;
+            }
+
+            r.added = true;
+            Object[] a = new Object[this.array.length + 3];
+            System.arraycopy(this.array, 0, a, 0, i);
+            a[i] = key;
+            a[i + 1] = value;
+            a[i + 2] = seq;
+            System.arraycopy(this.array, i, a, i + 3, this.array.length - i);
+
+            if (owner != null && this.owner == owner) {
+                this.array = a;
+                this.bitmap |= bit;
+                return this;
+            }
+
+            return new BitmapNode(owner, this.bitmap | bit, a);
+        }
+
+        private static Node merge(Object owner, int shift, Value<?> k1, Value<?> v1, int s1,
+                int h2, Value<?> k2, Value<?> v2, int s2) {
+            int h1 = hash(k1);
+            if (h1 == h2)
+                return new CollisionNode(owner, h1, new Object[] { k1, v1, s1, k2, v2, s2 });
+
+            Result r = new Result();
+            return EMPTY
+                .put(owner, shift, h1, k1, v1, s1, r)
+                .put(owner, shift, h2, k2, v2, s2, r);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key, Result r) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0)
+                return this;
+
+            int i = 3 * index(bit);
+            Object k = this.array[i];
+            Object v = this.array[i + 1];
+
+            if (k == null) {
+                Node child = ((Node) v).remove(shift + 5, hash, key, r);
+                if (child == v)
+                    return this;
+
+                if (child != null) {
+                    Object[] a = this.array.clone();
+                    a[i + 1] = child;
+                    return new BitmapNode(null, this.bitmap, a);
+                }
+            } else if (key.equals(k)) {
+                r.removed = true;
+                r.old = (Value<?>) v;
+            } else {
+                return this;
+            }
+
+            if (this.bitmap == bit)
+                return null;
+
+            Object[] a = new Object[this.array.length - 3];
+            System.arraycopy(this.array, 0, a, 0, i);
+            System.arraycopy(this.array, i + 3, a, i, this.array.length - i - 3);
+            return new BitmapNode(null, this.bitmap ^ bit, a);
+        }
+
+    }
+
+    private static class CollisionNode extends Node {
+
+        final int hash;
+        Object[] array;
+
+        CollisionNode(Object owner, int hash, Object[] array) {
+            super(owner);
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object[] array() {
+            return this.array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < this.array.length; i += 3) {
+                if (key.equals(this.array[i]))
+                    return i;
+            }
+
+            return -1;
+        }
+
+        @Override
+        Value<?> find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : (Value<?>) this.array[i + 1];
+        }
+
+        @Override
+        boolean contains(int shift, int hash, Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        Node put(Object owner, int shift, int hash, Value<?> key, Value<?> value, int seq, Result r) {
+            if (hash != this.hash) {
+                BitmapNode n = new BitmapNode(owner, bit(this.hash, shift), new Object[] { null, this, null });
+                return n.put(owner, shift, hash, key, value, seq, r);
+            }
+
+            boolean editable = owner != null && this.owner == owner;
+            int i = indexOf(key);
+            if (i >= 0) {
+                r.old = (Value<?>) this.array[i + 1];
+                if (this.array[i + 1] == value)
+                    return this;
+
+                Object[] a = editable ? this.array : this.array.clone();
+                a[i + 1] = value;
+                return editable ? this : new CollisionNode(owner, hash, a);
+            }
+
+            r.added = true;
+            Object[] a = new Object[this.array.length + 3];
+            System.arraycopy(this.array, 0, a, 0, this.array.length);
+            a[this.array.length] = key;
+            a[this.array.length + 1] = value;
+            a[this.array.length + 2] = seq;
+
+            if (editable) {
+                this.array = a;
+                return this;
+            }
+
+            return new CollisionNode(owner, hash, a);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key, Result r) {
+            int i = indexOf(key);
+            if (i < 0)
+                return this;
+
+            r.removed = true;
+            r.old = (Value<?>) this.array[i + 1];
+            if (this.array.length == 3)
+                return null;
+
+            Object[] a = new Object[this.array.length - 3];
+            System.arraycopy(this.array, 0, a, 0, i);
+            System.arraycopy(this.array, i + 3, a, i, this.array.length - i - 3);
+            return new CollisionNode(null, hash, a);
+        }
+
+    }
+
+    private static class TrieIterator implements Iterator<Map.Entry<Value<?>, Value<?>>> {
+
+        private final Deque<Object[]> arrays = new ArrayDeque<Object[]>();
+        private final Deque<Integer> positions = new ArrayDeque<Integer>();
+        private Map.Entry<Value<?>, Value<?>> next;
+
+        TrieIterator(Node root) {
+            this.arrays.push(root.array());
+            this.positions.push(0);
+            this.next = advance();
+        }
+
+        private Map.Entry<Value<?>, Value<?>> advance() {
+            while (!this.arrays.isEmpty()) {
+                Object[] a = this.arrays.peek();
+                int i = this.positions.pop();
+                if (i >= a.length) {
+                    this.arrays.pop();
+                    continue;
+                }
+
+                this.positions.push(i + 3);
+                if (a[i] == null) {
+                    this.arrays.push(((Node) a[i + 1]).array());
+                    this.positions.push(0);
+                } else {
+                    return new AbstractMap.SimpleImmutableEntry<Value<?>, Value<?>>(
+                        (Value<?>) a[i], (Value<?>) a[i + 1]);
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<Value<?>, Value<?>> next() {
+            if (this.next == null)
+                throw new NoSuchElementException();
+
+            Map.Entry<Value<?>, Value<?>> e = this.next;
+            this.next = advance();
+            return e;
+        }
+
+    }
+
+}
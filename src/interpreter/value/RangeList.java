@@ -0,0 +1,77 @@
+package interpreter.value;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+// Sequencia start, start + step, ... ate antes de end, calculada sob demanda.
+// E imutavel; ListValue a troca por uma PackedList antes de qualquer alteracao.
+public class RangeList extends AbstractList<Value<?>> implements RandomAccess, Versioned {
+
+    private final int start;
+    private final int step;
+    private final int size;
+
+    // step nao pode ser 0; sequencias com mais de Integer.MAX_VALUE
+    // elementos geram IllegalArgumentException.
+    public RangeList(int start, int end, int step) {
+        if (step == 0)
+            throw new IllegalArgumentException("step");
+
+        long n = 0;
+        if (step > 0 && end > start)
+            n = ((long) end - start + step - 1) / step;
+        else if (step < 0 && end < start)
+            n = ((long) start - end - step - 1) / -(long) step;
+
+        if (n > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("size");
+
+        this.start = start;
+        this.step = step;
+        this.size = (int) n;
+    }
+
+    public int start() {
+        return this.start;
+    }
+
+    public int step() {
+        return this.step;
+    }
+
+    @Override
+    public int version() {
+        return 0;
+    }
+
+    public int getInt(int index) {
+        if (index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+
+        return this.start + index * this.step;
+    }
+
+    @Override
+    public Value<?> get(int index) {
+        return new NumberValue(getInt(index));
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof NumberValue) || this.size == 0)
+            return -1;
+
+        long d = (long) ((NumberValue) o).intValue() - this.start;
+        if (d % this.step != 0)
+            return -1;
+
+        long i = d / this.step;
+        return i >= 0 && i < this.size ? (int) i : -1;
+    }
+
+}
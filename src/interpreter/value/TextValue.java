@@ -1,21 +1,102 @@
 package interpreter.value;
 
+import java.io.IOException;
+
 public class TextValue extends Value<String> {
 
+    // Abaixo deste tamanho concatenar Strings e mais barato que usar um builder.
+    private static final int MIN_BUILDER_LENGTH = 256;
+
     private String value;
+    private StringBuilder builder;
+    private int length;
 
     public TextValue(String value) {
         this.value = value;
+        this.builder = null;
+        this.length = value.length();
+    }
+
+    // Texto formado pelos primeiros length caracteres de um builder
+    // compartilhado, no qual so se acrescenta no final.
+    private TextValue(StringBuilder builder, int length) {
+        this.value = null;
+        this.builder = builder;
+        this.length = length;
     }
 
     @Override
     public String value() {
+        if (this.value == null) {
+            synchronized (this.builder) {
+                this.value = this.builder.substring(0, this.length);
+            }
+        }
+
         return this.value;
     }
 
+    public int length() {
+        return this.length;
+    }
+
+    public TextValue concat(TextValue other) {
+        int n = this.length + other.length;
+        if (n < MIN_BUILDER_LENGTH)
+            return new TextValue(this.value() + other.value());
+
+        StringBuilder sb = this.builder;
+        if (sb != null) {
+            String tail = other.builder == sb ? null : other.value();
+            synchronized (sb) {
+                // Se ninguem acrescentou nada depois deste texto, o
+                // builder pode ser estendido sem copiar o que ja existe.
+                if (sb.length() == this.length) {
+                    if (tail != null)
+                        sb.append(tail);
+                    else
+                        sb.append(sb, 0, other.length);
+
+                    return new TextValue(sb, n);
+                }
+            }
+        }
+
+        sb = new StringBuilder(Math.max(n * 2, MIN_BUILDER_LENGTH));
+        this.appendTo(sb);
+        other.appendTo(sb);
+        return new TextValue(sb, n);
+    }
+
+    // Assume o builder, que nao deve mais ser alterado por quem o criou.
+    public TextValue(StringBuilder builder) {
+        this(builder, builder.length());
+    }
+
+    @Override
+    public void write(Appendable out) throws IOException {
+        if (this.value != null) {
+            out.append(this.value);
+        } else {
+            synchronized (this.builder) {
+                out.append(this.builder, 0, this.length);
+            }
+        }
+    }
+
+    private void appendTo(StringBuilder sb) {
+        if (this.value != null) {
+            sb.append(this.value);
+        } else {
+            synchronized (this.builder) {
+                sb.append(this.builder, 0, this.length);
+            }
+        }
+    }
+
     @Override
     public int hashCode() {
-        return this.value.hashCode();
+        return this.value().hashCode();
     }
 
     @Override
@@ -23,7 +104,8 @@ public class TextValue extends Value<String> {
         if (this == obj) {
             return true;
         } else if (obj instanceof TextValue) {
-            return this.value.equals(((TextValue) obj).value);
+            TextValue other = (TextValue) obj;
+            return this.length == other.length && this.value().equals(other.value());
         } else {
             return false;
         }
@@ -31,7 +113,7 @@ public class TextValue extends Value<String> {
 
     @Override
     public String toString() {
-        return this.value.toString();
+        return this.value();
     }
 
 }
@@ -1,5 +1,8 @@
 package interpreter.value;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 public abstract class Value<T> {
 
   protected Value() {
@@ -7,4 +10,28 @@ public abstract class Value<T> {
 
   public abstract T value();
 
+  // Escreve o texto do valor em out, aos pedacos, sem montar uma String
+  // com o valor inteiro.
+  public void write(Appendable out) throws IOException {
+    out.append(this.toString());
+  }
+
+  public static void write(Value<?> v, Appendable out) throws IOException {
+    if (v == null)
+      out.append("null");
+    else
+      v.write(out);
+  }
+
+  protected String render() {
+    StringBuilder sb = new StringBuilder();
+    try {
+      this.write(sb);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return sb.toString();
+  }
+
 }
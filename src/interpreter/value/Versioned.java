@@ -0,0 +1,9 @@
+package interpreter.value;
+
+// Colecao que conta suas alteracoes, permitindo guardar resultados
+// calculados sobre ela (como o hash) ate a proxima alteracao.
+public interface Versioned {
+
+    int version();
+
+}
@@ -1,6 +1,7 @@
 package lexical;
 
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.PushbackInputStream;
 
 public class LexicalAnalysis implements AutoCloseable {
@@ -10,14 +11,21 @@ public class LexicalAnalysis implements AutoCloseable {
     private PushbackInputStream input;
 
     public LexicalAnalysis(String filename) {
+        this(open(filename));
+    }
+
+    public LexicalAnalysis(InputStream in) {
+        input = new PushbackInputStream(in, 2);
+        st = new SymbolTable();
+        line = 1;
+    }
+
+    private static InputStream open(String filename) {
         try {
-            input = new PushbackInputStream(new FileInputStream(filename), 2);
+            return new FileInputStream(filename);
         } catch (Exception e) {
             throw new LexicalException("Unable to open file");
         }
-
-        st = new SymbolTable();
-        line = 1;
     }
 
     public void close() {
@@ -0,0 +1,83 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+import interpreter.Daemon;
+
+// Cliente do mdi --daemon: aceita os mesmos argumentos do mdi, manda o
+// pedido pelo socket ($MDI_SOCKET ou o padrao), repassa a entrada padrao e
+// escreve a resposta. Sem servidor, executa o script aqui mesmo com o mdi.
+public class mdc {
+
+    public static void main(String[] args) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(Daemon.defaultSocket()));
+        } catch (IOException e) {
+            mdi.main(args);
+            return;
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeUTF(System.getProperty("user.dir"));
+        h.writeBoolean(System.console() != null);
+        h.writeInt(args.length);
+        for (String arg : args)
+            h.writeUTF(arg);
+        write(channel, header.toByteArray(), header.size());
+
+        // A entrada e lida (e repassada) numa thread a parte, enquanto a
+        // saida chega. Escrita e leitura usam o canal direto: os streams de
+        // Channels bloqueariam um ao outro.
+        Thread input = new Thread(() -> {
+            byte[] buf = new byte[64 * 1024];
+            try {
+                int n;
+                while ((n = System.in.read(buf)) > 0)
+                    write(channel, buf, n);
+                channel.shutdownOutput();
+            } catch (IOException e) {
+                // O servidor ja terminou o pedido.
+            }
+        }, "mdc-input");
+        input.setDaemon(true);
+        input.start();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        try {
+            while (true) {
+                byte type = in.readByte();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+
+                if (type == Daemon.OUTPUT) {
+                    System.out.write(data);
+                    System.out.flush();
+                } else if (type == Daemon.ERROR) {
+                    System.err.write(data);
+                    System.err.flush();
+                } else if (type == Daemon.EXIT) {
+                    System.exit(ByteBuffer.wrap(data).getInt());
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("mdc: connection to the daemon lost");
+            System.exit(1);
+        }
+    }
+
+    private static void write(SocketChannel channel, byte[] data, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(data, 0, len);
+        while (b.hasRemaining())
+            channel.write(b);
+    }
+
+}
@@ -1,40 +1,67 @@
-import java.io.ObjectInputStream.GetField;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
-import interpreter.command.Command;
-import lexical.Lexeme;
-import lexical.LexicalAnalysis;
-import lexical.TokenType;
-import syntatic.SyntaticAnalysis;
+import interpreter.Daemon;
+import interpreter.MiniDartEngine;
+import interpreter.MiniDartException;
+import interpreter.Options;
+import interpreter.Program;
+import interpreter.util.Context;
+import interpreter.util.OutputBuffer;
+import interpreter.value.PackedList;
 
 public class mdi {
 
-    public static void main(String[] args) {
-       if (args.length != 1) {
-            System.out.println("Usage: java mdi [miniDart file]");
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        if (options == null) {
+            System.out.println(Options.USAGE);
             return;
         }
-        //String leroy = "./bin/exemples/teste.mdart";
-
-        try (LexicalAnalysis l = new LexicalAnalysis(args[0])) {
-            // O código a seguir é dado para testar o interpretador.
-            // TODO: descomentar depois que o analisador léxico estiver OK.
-            SyntaticAnalysis s = new SyntaticAnalysis(l);
-            Command c = s.start();
-            c.execute();
-
-            // // O código a seguir é usado apenas para testar o analisador léxico.
-            // // TODO: depois de pronto, comentar o código abaixo.
-        //     Lexeme lex;
-        //     do {
-        //         lex = l.nextToken();
-        //         System.out.printf("%02d: (\"%s\", %s)\n", l.getLine(),
-        //             lex.token, lex.type);
-        //     } while (lex.type != TokenType.END_OF_FILE &&
-        //              lex.type != TokenType.INVALID_TOKEN &&
-        //              lex.type != TokenType.UNEXPECTED_EOF);
-        // } catch (Exception e) {
-        //     System.err.println("Internal error: " + e.getMessage());
-            
+
+        if (options.offHeapThreshold() >= 0)
+            PackedList.setOffHeapThreshold(options.offHeapThreshold());
+
+        // Servidor para o mdc: fica esperando pedidos em vez de executar um
+        // arquivo.
+        if (options.daemon() != null) {
+            String socket = options.daemon();
+            new Daemon(socket.isEmpty() ? Daemon.defaultSocket() : Paths.get(socket)).serve();
+            return;
+        }
+
+        // auto: sem prompts quando nao ha um terminal, como ao ler de um pipe.
+        Context context = options.context(System.in, System.out, System.console() != null);
+
+        // A saida vai direto para o descritor (ou para o arquivo de --out),
+        // sem passar pelo PrintStream de System.out.
+        String out = options.out();
+        FileChannel channel = out == null ? new FileOutputStream(FileDescriptor.out).getChannel() :
+            FileChannel.open(Paths.get(out), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputBuffer output = new OutputBuffer(channel, options.async());
+        context.setOutput(output);
+
+        // Os erros (de sintaxe ou de execucao) sao mostrados depois do que o
+        // programa ja imprimiu, e encerram com codigo 1.
+        int status = 0;
+        try {
+            Program p = new MiniDartEngine().compile(Paths.get(options.file()));
+            p.run(context);
+        } catch (MiniDartException e) {
+            System.out.printf("%02d: %s\n", e.getLine(), e.getMessage());
+            status = 1;
+        } finally {
+            output.close();
+            if (out != null)
+                channel.close();
         }
+
+        if (status != 0)
+            System.exit(status);
     }
-}
\ No newline at end of file
+}
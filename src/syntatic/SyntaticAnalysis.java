@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import interpreter.MiniDartException;
 import interpreter.command.AssertCommand;
 import interpreter.command.AssignCommand;
 import interpreter.command.BlocksCommand;
@@ -48,12 +49,15 @@ public class SyntaticAnalysis {
 
     private LexicalAnalysis lex;
     private Lexeme current;
+    private Lexeme next;
     private Map<String,Variable> memory;
+    private Map<String,TextValue> texts;
 
     public SyntaticAnalysis(LexicalAnalysis lex) {
         this.lex = lex;
         this.current = lex.nextToken();
         memory = new HashMap<String,Variable>();
+        texts = new HashMap<String,TextValue>();
     }
 
     public Command start() {
@@ -65,40 +69,80 @@ public class SyntaticAnalysis {
     private void advance() {
         // System.out.println("Advanced (\"" + current.token + "\", " +
         //     current.type + ")");
-        current = lex.nextToken();
+        current = nextToken();
+    }
+
+    private Lexeme nextToken() {
+        if (next == null)
+            return lex.nextToken();
+
+        Lexeme l = next;
+        next = null;
+        return l;
+    }
+
+    // O lexema depois de current, sem consumir current.
+    private Lexeme peek() {
+        if (next == null)
+            next = lex.nextToken();
+
+        return next;
+    }
+
+    // As funcoes que vieram depois das palavras reservadas originais sao
+    // nomes comuns: sum, count ou lines continuam validos como variaveis, e
+    // so sao funcoes quando seguidos de '('. Como nao ha funcoes do
+    // usuario, <name> '(' nao era valido antes.
+    private static final Map<String,FunctionOp> BUILTINS = builtins();
+
+    private static Map<String,FunctionOp> builtins() {
+        Map<String,FunctionOp> m = new HashMap<String,FunctionOp>();
+        m.put("sort", FunctionOp.SORT);
+        m.put("sum", FunctionOp.SUM);
+        m.put("min", FunctionOp.MIN);
+        m.put("max", FunctionOp.MAX);
+        m.put("contains", FunctionOp.CONTAINS);
+        m.put("indexOf", FunctionOp.INDEX_OF);
+        m.put("reverse", FunctionOp.REVERSE);
+        m.put("join", FunctionOp.JOIN);
+        m.put("count", FunctionOp.COUNT);
+        m.put("range", FunctionOp.RANGE);
+        m.put("lines", FunctionOp.LINES);
+        m.put("split", FunctionOp.SPLIT);
+        m.put("loadcsv", FunctionOp.LOADCSV);
+        m.put("loadjson", FunctionOp.LOADJSON);
+        return m;
+    }
+
+    private boolean isBuiltinCall() {
+        return current.type == TokenType.NAME && BUILTINS.containsKey(current.token) &&
+            peek().type == TokenType.OPEN_PAR;
     }
 
     private void eat(TokenType type) {
         // System.out.println("Expected (..., " + type + "), found (\"" + 
         //     current.token + "\", " + current.type + ")");
         if (type == current.type) {
-            current = lex.nextToken();
+            current = nextToken();
         } else {
             showError();
         }
     }
 
     private void showError() {
-        System.out.printf("%02d: ", lex.getLine());
-
         switch (current.type) {
             case INVALID_TOKEN:
-                System.out.printf("Lexema inválido [%s]\n", current.token);
-                break;
+                throw new MiniDartException(lex.getLine(), String.format("Lexema inválido [%s]", current.token));
             case UNEXPECTED_EOF:
             case END_OF_FILE:
-                System.out.printf("Fim de arquivo inesperado\n");
-                break;
+                throw new MiniDartException(lex.getLine(), "Fim de arquivo inesperado");
             default:
-                System.out.printf("Lexema não esperado [%s]\n", current.token);
-                break;
+                throw new MiniDartException(lex.getLine(), String.format("Lexema não esperado [%s]", current.token));
         }
-
-        System.exit(1);
     }
 
     // <code> ::= { <cmd> }
-    private BlocksCommand procCode() {
+    private Command procCode() {
         int line = lex.getLine();
         List<Command> cmds = new ArrayList<Command>();
         while (current.type == TokenType.FINAL ||
@@ -134,8 +178,7 @@ public class SyntaticAnalysis {
             cmds.add(c);
         }
 
-        BlocksCommand bc = new BlocksCommand(line, cmds);
-        return bc;
+        return BlocksCommand.of(line, cmds);
     }
 
     // <cmd> ::= <decl> | <print> | <assert> | <if> | <while> | <dowhile> | <for> | <assign>
@@ -196,7 +239,7 @@ public class SyntaticAnalysis {
     }
 
     // <decl> ::= [ final ] var [ '?' ] <name> [ '=' <expr> ] { ',' <name> [ '=' <expr> ] } ';'
-    private BlocksCommand procDecl() {
+    private Command procDecl() {
         int line = lex.getLine();
         List<Command> cmds = new ArrayList<Command>();
 
@@ -243,8 +286,7 @@ public class SyntaticAnalysis {
 
         eat(TokenType.SEMICOLON);
 
-        BlocksCommand bcmd = new BlocksCommand(line, cmds);
-        return bcmd;
+        return BlocksCommand.of(line, cmds);
     }
 
     // <print> ::= print '(' [ <expr> ] ')' ';'
@@ -644,7 +686,7 @@ public class SyntaticAnalysis {
                 expr = procFunction();
                 break;
             case NAME:
-                expr = procLValue();
+                expr = isBuiltinCall() ? procFunction() : procLValue();
                 break;
             case OPEN_BRA:
                 expr = procList();
@@ -692,7 +734,10 @@ public class SyntaticAnalysis {
         return ce;
     }
 
-    // <function> ::= ( read | random | length | keys | values | tobool | toint | tostr ) '(' <expr> ')'
+    // <function> ::= ( read | random | length | keys | values | tobool | toint | tostr |
+    //                  sort | sum | min | max | reverse | lines | loadcsv | loadjson ) '(' <expr> ')' |
+    //                ( contains | indexOf | join | count | split ) '(' <expr> ',' <expr> ')' |
+    //                range '(' <expr> ',' <expr> [ ',' <expr> ] ')'
     private FunctionExpr procFunction() {
         FunctionOp op = null;
         switch (current.type) {
@@ -728,6 +773,12 @@ public class SyntaticAnalysis {
                 advance();
                 op = FunctionOp.TOSTR;
                 break;
+            case NAME:
+                op = BUILTINS.get(current.token);
+                if (op == null)
+                    showError();
+                advance();
+                break;
             default:
                 showError();
                 break;
@@ -736,9 +787,21 @@ public class SyntaticAnalysis {
 
         eat(TokenType.OPEN_PAR);
         Expr expr = procExpr();
+
+        List<Expr> args = new ArrayList<Expr>();
+        if (op == FunctionOp.CONTAINS || op == FunctionOp.INDEX_OF ||
+                op == FunctionOp.JOIN || op == FunctionOp.COUNT ||
+                op == FunctionOp.SPLIT || op == FunctionOp.RANGE) {
+            eat(TokenType.COMMA);
+            args.add(procExpr());
+        }
+        if (op == FunctionOp.RANGE && current.type == TokenType.COMMA) {
+            advance();
+            args.add(procExpr());
+        }
         eat(TokenType.CLOSE_PAR);
 
-        FunctionExpr fexpr = new FunctionExpr(line, op, expr);
+        FunctionExpr fexpr = new FunctionExpr(line, op, expr, args.toArray(new Expr[0]));
         return fexpr;
     }
 
@@ -987,7 +1050,14 @@ public class SyntaticAnalysis {
         String txt = current.token;
         eat(TokenType.TEXT);
 
-        TextValue tv = new TextValue(txt);
+        // Literais iguais compartilham o mesmo TextValue, o que deixa as
+        // chaves de mapas comparaveis por identidade.
+        TextValue tv = texts.get(txt);
+        if (tv == null) {
+            tv = new TextValue(txt);
+            texts.put(txt, tv);
+        }
+
         return tv;
     }
 }